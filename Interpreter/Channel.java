@@ -0,0 +1,38 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded queue of values between interpreters (see the chan words). A
+ * channel is stored in the reference table like a list, and forks share
+ * their parent's table, so a task spawned with a channel on its stack talks
+ * to the same channel as its parent.
+ *
+ * Values are exported by the sender and adopted by the receiver (see
+ * Interpreter.export), as references are only meaningful in the interpreter
+ * that made them. send blocks while the channel is full and receive blocks
+ * while it's empty.
+ */
+class Channel {
+	private final BlockingQueue<Object> queue;
+	
+	public Channel(int capacity) {
+		queue = new ArrayBlockingQueue<>(java.lang.Math.max(capacity, 1));
+	}
+	
+	void send(Object value) throws InterruptedException {
+		queue.put(value);
+	}
+	
+	Object receive() throws InterruptedException {
+		return queue.take();
+	}
+	
+	// Returns the approximate number of bytes held by the channel's buffer (the values in it aren't counted)
+	long footprint() {
+		return 64 + 8L * (queue.size() + queue.remainingCapacity());
+	}
+	
+	public String toString() {
+		return "<channel>";
+	}
+}
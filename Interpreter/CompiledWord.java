@@ -0,0 +1,216 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The second execution tier for defined words. Running a variable normally
+ * re-parses its body, substitutes its named arguments into the text and
+ * parses the result again, on every call. Once a word is hot its body is
+ * compiled instead: the body is split into tokens once, the named arguments
+ * are turned into slots and every name is resolved ahead of time, so a call
+ * is a single pass over an array of pre-resolved operations.
+ *
+ * Resolutions are only valid for the bindings they were made against (see
+ * Environment.stamp), so forks that haven't made any definitions of their own
+ * share the compiled word. A compiled word is thrown away (and compiled again)
+ * as soon as any definition changes, and if a definition changes while the
+ * word is running, the rest of the body resolves every name as it's reached.
+ *
+ * Call sites of the arithmetic and comparison tokens are quickened: the
+ * first time one runs with two integer operands it's rewritten in place to
+ * an integer specialized operation. The specialized operation checks that
+ * both operands are still integers (and falls back to the generic token if
+ * they aren't, after which the site is never quickened again). A compiled
+ * word may be run by several interpreters at once, so a site only moves
+ * forward (NAME to INT_MATH or INT_GREATER to GENERIC), and every kind is
+ * correct to run whichever interpreter rewrote it.
+ */
+public class CompiledWord {
+	private static final byte PUSH = 0;				// Push value
+	private static final byte ARG = 1;				// Run the named argument 'arg'
+	private static final byte LIST = 2;				// Push value with the named arguments substituted into it
+	private static final byte NAME = 3;				// Call the token 'id' (target is the token it resolved to)
+	private static final byte INT_MATH = 4;			// A NAME whose target is a Math token that has only seen integers
+	private static final byte INT_GREATER = 5;		// A NAME whose target is '>' that has only seen integers
+	private static final byte GENERIC = 6;			// A NAME that is never quickened
+	private static final VarHandle KINDS = MethodHandles.arrayElementVarHandle(byte[].class);
+	
+	private final Object stamp;						// The bindings the names were resolved against
+	private final int args;							// The number of named arguments
+	private final byte[] kinds;
+	private final String[] values;
+	private final int[] ids;						// The symbol id of each NAME (the argument index of each ARG)
+	private final TokenBase[] targets;
+	
+	private CompiledWord(Environment env, int args, int size) {
+		this.stamp = env.stamp();
+		this.args = args;
+		kinds = new byte[size];
+		values = new String[size];
+		ids = new int[size];
+		targets = new TokenBase[size];
+	}
+	
+	/**
+	 * Compiles the body of a defined word. Only list bodies whose named
+	 * arguments are single tokens (or inside nested list text) are compiled.
+	 *
+	 * @param gloom the interpreter whose definitions the names are resolved against
+	 * @param body the body of the word (eg. "[ $1 $1 * ]")
+	 * @return the compiled word, or null if the body can't be compiled
+	 */
+	static CompiledWord compile(Interpreter gloom, String body) {
+		if (!"list".equals(TokenBase.type(body)) || TokenBase.isReference(body)) return null;
+		
+		int args = 0;
+		while (body.contains("$" + (args + 1))) ++args;
+		
+		if (args > 9) return null;							// "$1" is a prefix of "$10", so text substitution is order dependent
+		
+		String[] tokens = TokenBase.elements(body);
+		CompiledWord ret = new CompiledWord(gloom.environment(), args, tokens.length);
+		
+		for (int i = 0; i < tokens.length; ++i) {
+			String token = tokens[i];
+			
+			if (token.isEmpty()) {
+				return null;
+				
+			} else if (token.charAt(0) == '[') {
+				ret.kinds[i] = token.contains("$") ? LIST : PUSH;
+				ret.values[i] = token;
+			
+			} else if (token.length() == 2 && token.charAt(0) == '$' && token.charAt(1) >= '1' && token.charAt(1) < '1' + args) {
+				ret.kinds[i] = ARG;
+				ret.ids[i] = token.charAt(1) - '1';
+			
+			} else if (substitutes(token, args)) {
+				return null;										// An argument is substituted into part of the token
+			
+			} else if (token.charAt(0) == '$') {
+				ret.kinds[i] = PUSH;
+				ret.values[i] = token.substring(1);
+			
+			} else if (Symbols.isName(token)) {
+				ret.kinds[i] = NAME;
+				ret.values[i] = token;
+				ret.ids[i] = Symbols.find(token);
+				ret.targets[i] = gloom.resolve(ret.ids[i]);
+				
+				if (!(ret.targets[i] instanceof Math || ret.targets[i] instanceof Greater))
+					ret.kinds[i] = GENERIC;
+			
+			} else {
+				ret.kinds[i] = PUSH;
+				ret.values[i] = token;
+			}
+		}
+		
+		return ret;
+	}
+	
+	// Tests whether eval would substitute any of the named arguments into the token
+	private static boolean substitutes(String token, int args) {
+		for (int i = 1; i <= args; ++i)
+			if (token.contains("$" + i)) return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Tests whether the resolutions made by compile are still correct for
+	 * the interpreter.
+	 *
+	 * @param gloom the interpreter that is about to run the word
+	 * @return if the word may be run by the interpreter
+	 */
+	boolean isValid(Interpreter gloom) {
+		return gloom.environment().stamp() == stamp;
+	}
+	
+	/**
+	 * Runs the word. The named arguments are popped off the main stack first
+	 * ($1 is the top element), as eval would.
+	 *
+	 * @param gloom the interpreter to run the word in
+	 * @param main the interpreter's main stack
+	 */
+	void run(Interpreter gloom, Stack<String> main) {
+		String[] arg = new String[args];
+		
+		for (int i = 0; i < args; ++i)
+			arg[i] = main.pop();
+		
+		boolean stale = false;
+		gloom.countInstructions(kinds.length);
+		
+		for (int i = 0; i < kinds.length; ++i) {
+			switch (kinds[i]) {
+				case PUSH:
+					main.push(values[i]);
+					break;
+				
+				case ARG:
+					gloom.executeToken(arg[ids[i]]);
+					break;
+				
+				case LIST:
+					String list = values[i];
+					
+					for (int j = 0; j < args; ++j)
+						list = list.replace("$" + (j + 1), arg[j]);
+					
+					main.push(list);
+					break;
+				
+				case INT_MATH:
+				case INT_GREATER:
+					if (!stale && quick(gloom, main, i)) break;
+					
+					KINDS.setRelease(kinds, i, GENERIC);					// The guard failed, so the site isn't monomorphic
+					stale = call(gloom, main, i, stale);
+					break;
+					
+				default:
+					stale = call(gloom, main, i, stale);
+			}
+		}
+	}
+	
+	// Calls the token at a NAME or GENERIC site (quickening a NAME site if its operands are integers). Returns whether the names must be resolved as they're reached from now on
+	private boolean call(Interpreter gloom, Stack<String> main, int site, boolean stale) {
+		if (stale || targets[site] == null) {
+			if (!gloom.call(Symbols.resolve(ids[site], values[site]))) main.push(values[site]);	// An unresolved name may still be a let binding
+			return stale;
+		}
+		
+		if (kinds[site] == NAME && quick(gloom, main, site)) {
+			KINDS.compareAndSet(kinds, site, NAME, targets[site] instanceof Math ? INT_MATH : INT_GREATER);	// Unless another interpreter got there first
+			return false;
+		}
+		
+		gloom.call(ids[site], targets[site]);
+		return gloom.environment().stamp() != stamp;						// The call may have changed a definition (eg. def or import)
+	}
+	
+	// Runs the integer specialization of the Math or Greater token at the site. Returns false (leaving the stack as it was) unless both operands are integers
+	private boolean quick(Interpreter gloom, Stack<String> main, int site) {
+		if (main.size() < 2 || !gloom.canQuicken()) return false;
+		
+		String right = main.pop();
+		long r = TokenBase.intValue(right), l = TokenBase.intValue(main.top());
+		
+		if (r == TokenBase.NOT_INT || l == TokenBase.NOT_INT) {
+			main.push(right);
+			return false;
+		}
+		
+		main.pop();
+		
+		if (targets[site] instanceof Math)
+			main.push(Integer.toString(((Math)targets[site]).op((int)l, (int)r)));
+		else
+			main.push(l > r ? TokenBase.TRUE : TokenBase.FALSE);
+		
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A gloom map. Maps are stored in the reference table like lists, so a map
+ * value is a reference (eg. &3) and is passed around and printed the same way.
+ * Keys are single tokens (integers or strings) and are found by hashing, so
+ * map.get, map.put, map.has and map.remove are O(1). Entries are kept (and
+ * printed) in the order they were first added.
+ *
+ * A map belongs to the reference table it was created in. Forks share their
+ * parent's table until one of them modifies it, so a map that's about to be
+ * modified by an interpreter that doesn't own it is copied first (see
+ * Interpreter.ownMap).
+ */
+class Dict {
+	private final Map<String, String> entries;
+	private final List<Object> owner;				// The reference table this map was created in
+	
+	/**
+	 * Constructs an empty map.
+	 *
+	 * @param owner the reference table the map is stored in
+	 */
+	public Dict(List<Object> owner) {
+		this(owner, new LinkedHashMap<>());
+	}
+	
+	private Dict(List<Object> owner, Map<String, String> entries) {
+		this.owner = owner;
+		this.entries = entries;
+	}
+	
+	// Integers are compared by value (ie. 07 and 7 are the same key)
+	private static String key(String key) {
+		long n = TokenBase.intValue(key);
+		return n == TokenBase.NOT_INT ? key : Long.toString(n);
+	}
+	
+	/**
+	 * Tests whether the map is stored in the given reference table.
+	 *
+	 * @param table a reference table
+	 * @return if the map may be modified by the table's interpreter
+	 */
+	boolean ownedBy(List<Object> table) {
+		return owner == table;
+	}
+	
+	/**
+	 * Returns a copy of the map that belongs to another reference table.
+	 *
+	 * @param table the reference table the copy is stored in
+	 * @return the copy
+	 */
+	Dict copy(List<Object> table) {
+		return new Dict(table, new LinkedHashMap<>(entries));
+	}
+	
+	String get(String key) {
+		return entries.get(key(key));
+	}
+	
+	boolean has(String key) {
+		return entries.containsKey(key(key));
+	}
+	
+	void put(String key, String value) {
+		entries.put(key(key), value);
+	}
+	
+	String remove(String key) {
+		return entries.remove(key(key));
+	}
+	
+	int size() {
+		return entries.size();
+	}
+	
+	// Returns the approximate number of bytes held by the map (see Interpreter.memoryUsage)
+	long footprint() {
+		long ret = 64;
+		
+		for (Map.Entry<String, String> e : entries.entrySet())
+			ret += 128 + e.getKey().length() + e.getValue().length();
+		
+		return ret;
+	}
+	
+	/**
+	 * Returns the entries of the map, in the order they were added.
+	 *
+	 * @return the entries of the map
+	 */
+	Iterable<Map.Entry<String, String>> entries() {
+		return entries.entrySet();
+	}
+	
+	/**
+	 * Generates the string representation of the map. The keys and values are
+	 * listed in pairs between braces, so the map from 1 to 10 and a to &2 is
+	 * "{ 1 10 a &2 }". The empty map is "{ }".
+	 *
+	 * @return the string representation of the map
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder("{ ");
+		
+		for (Map.Entry<String, String> e : entries.entrySet())
+			ret.append(e.getKey()).append(' ').append(e.getValue()).append(' ');
+		
+		return ret.append('}').toString();
+	}
+}
\ No newline at end of file
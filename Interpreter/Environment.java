@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * The variables defined in an interpreter, indexed by their symbol id.
+ *
+ * The bindings are stored in pages of PAGE ids, so an environment can be
+ * forked without copying its definitions. Both environments share every
+ * page, and the first definition either of them makes in a page copies just
+ * that page. Forking copies only the table of pages (one entry for every PAGE
+ * ids). Neither environment can see the definitions the other makes after
+ * the fork.
+ *
+ * An environment that has never been forked owns all of its pages and writes
+ * straight into them, so interpreters that don't fork pay nothing for it.
+ */
+public class Environment {
+	private static final int PAGE_BITS = 6;
+	private static final int PAGE = 1 << PAGE_BITS;		// The ids in a page
+	
+	private TokenBase[][] pages;			// Page p holds ids p * PAGE to (p + 1) * PAGE - 1 (null if none of them are bound)
+	private boolean[] owned;				// Whether each page belongs to this environment alone (a page that isn't owned is never modified)
+	private int size;						// The number of bound ids
+	private Object stamp = new Object();	// Replaced by every put. Shared with forks until either of them makes a definition
+	
+	/**
+	 * Constructs an empty environment.
+	 *
+	 * @param capacity the number of ids to allocate room for
+	 */
+	public Environment(int capacity) {
+		pages = new TokenBase[(java.lang.Math.max(capacity, 1) + PAGE - 1) >> PAGE_BITS][];
+		owned = new boolean[pages.length];
+	}
+	
+	private Environment(TokenBase[][] pages, int size, Object stamp) {
+		this.pages = pages;
+		this.size = size;
+		this.stamp = stamp;
+		owned = new boolean[pages.length];
+	}
+	
+	/**
+	 * Returns the token bound to the symbol id.
+	 *
+	 * @param id the symbol id to look up
+	 * @return the bound token (null if the id is not bound)
+	 */
+	public TokenBase get(int id) {
+		int p = id >> PAGE_BITS;
+		if (id < 0 || p >= pages.length) return null;
+		
+		TokenBase[] page = pages[p];
+		return page != null ? page[id & (PAGE - 1)] : null;
+	}
+	
+	/**
+	 * Binds the token to the symbol id, replacing any previous binding.
+	 *
+	 * @param id the symbol id to bind
+	 * @param value the token to bind to the id
+	 */
+	public void put(int id, TokenBase value) {
+		int p = id >> PAGE_BITS;
+		stamp = new Object();
+		
+		if (p >= pages.length) {
+			pages = Arrays.copyOf(pages, java.lang.Math.max(p + 1, pages.length * 2));
+			owned = Arrays.copyOf(owned, pages.length);
+		}
+		
+		if (!owned[p]) {									// Copy the page before writing to it (it may be shared with a fork)
+			pages[p] = pages[p] != null ? pages[p].clone() : new TokenBase[PAGE];
+			owned[p] = true;
+		}
+		
+		TokenBase[] page = pages[p];
+		if (page[id & (PAGE - 1)] == null) ++size;
+		page[id & (PAGE - 1)] = value;
+	}
+	
+	/**
+	 * Creates an environment that starts with every definition in this one.
+	 * Later definitions made in either environment aren't seen by the other.
+	 *
+	 * @return the new environment
+	 */
+	public Environment fork() {
+		Arrays.fill(owned, false);							// Every page is now shared
+		return new Environment(pages.clone(), size, stamp);
+	}
+	
+	/**
+	 * Returns an object that identifies the current bindings. A fork returns
+	 * the same stamp as its parent until either of them makes a definition, so
+	 * any resolution made against an environment with the same stamp is still
+	 * correct (even if it was made by another fork).
+	 *
+	 * @return the stamp of the environment's bindings
+	 */
+	public Object stamp() {
+		return stamp;
+	}
+	
+	/**
+	 * Returns the number of ids bound in this environment.
+	 *
+	 * @return the number of bound ids
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns every binding as an array indexed by symbol id (unbound ids are
+	 * null). Changes to the array are not reflected in the environment.
+	 *
+	 * @return the bindings
+	 */
+	public TokenBase[] toArray() {
+		TokenBase[] ret = new TokenBase[pages.length << PAGE_BITS];
+		
+		for (int p = 0; p < pages.length; ++p)
+			if (pages[p] != null) System.arraycopy(pages[p], 0, ret, p << PAGE_BITS, PAGE);
+		
+		return ret;
+	}
+}
@@ -0,0 +1,19 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event emitted for every top level evaluation (REPL line, imported file, ...)
+// Events cost (next to) nothing unless a recording is enabling them
+@Name("gloom.Evaluate")
+@Label("Gloom Evaluate")
+@Category("Gloom")
+@Description("Parsing and execution of a block of gloom code")
+class EvaluateEvent extends Event {
+	@Label("Instructions")
+	long instructions;
+	
+	@Label("Main Stack Depth")
+	int depth;
+}
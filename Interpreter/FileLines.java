@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The lines of a file as a lazy gloom list (see the file.lines token). Lines
+ * are read through a file channel a chunk at a time as they are accessed, so
+ * a file of any size can be processed in constant memory. The file is only
+ * open while a chunk is being read, so a list that's no longer used doesn't
+ * hold on to a file descriptor.
+ *
+ * A line holding a single token is that token, every other line is a list of
+ * its (whitespace separated) tokens. The file "1\n2 3\n" is [ 1 [ 2 3 ] ].
+ *
+ * Only the offset of every STRIDE'th line is remembered. Reading a line reads
+ * forward from the nearest remembered line before it (or from the line read
+ * last, when reading in order), so get is O(1) when the lines are read in
+ * order and O(STRIDE) otherwise. size reads the file to the end the first time
+ * it's called. The list is the file as it was when it was opened (anything
+ * appended to it later isn't read).
+ */
+class FileLines extends Sequence {
+	private static final int STRIDE = 256;				// Lines between remembered offsets
+	private static final int CHUNK = 1 << 16;			// Bytes read from the file at a time
+	
+	private final Path file;
+	private final long length;							// The length of the file when it was opened
+	private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+	private long chunkStart = -1;						// The file offset of the chunk's first byte (-1 if nothing's been read)
+	private long[] offsets = new long[16];				// offsets[i] is where line i * STRIDE starts
+	private int indexed = 1;							// The number of valid offsets (line 0 starts at offset 0)
+	private int size = -1;								// The number of lines (-1 until the end of the file has been reached)
+	private int line = -1;								// The line after the last one read (or -1), and where it starts
+	private long next;
+	
+	/**
+	 * Opens the file.
+	 *
+	 * @throws IOException if the file can't be opened (or is a directory)
+	 * @param file the file to read
+	 */
+	public FileLines(Path file) throws IOException {
+		this.file = file;
+		
+		if (Files.isDirectory(file))
+			throw new FileSystemException(file.toString(), null, "Is a directory");
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			length = channel.size();
+		}
+	}
+	
+	Path path() {
+		return file;
+	}
+	
+	synchronized int size() {
+		if (size < 0) {
+			int at = (indexed - 1) * STRIDE;			// Read from the last remembered line to the end
+			long offset = offsets[indexed - 1];
+			
+			if (line > at) {
+				at = line;
+				offset = next;
+			}
+			
+			while ((offset = skip(offset)) >= 0)
+				remember(++at, offset);
+			
+			if (size < 0) size = at;					// The file is empty
+		}
+		
+		return size;
+	}
+	
+	synchronized String get(int index) {
+		if (index < 0 || (size >= 0 && index >= size))
+			throw new IndexOutOfBoundsException();
+		
+		int at;
+		long offset;
+		
+		if (line >= 0 && line <= index && index - line < STRIDE) {		// Continue from the last line read
+			at = line;
+			offset = next;
+		
+		} else {
+			int known = java.lang.Math.min(index / STRIDE, indexed - 1);
+			at = known * STRIDE;
+			offset = offsets[known];
+		}
+		
+		for (; at < index; remember(++at, offset))
+			if ((offset = skip(offset)) < 0) throw new IndexOutOfBoundsException();
+		
+		StringBuilder text = new StringBuilder();
+		long end = read(offset, text);
+		if (end < 0) throw new IndexOutOfBoundsException();
+		
+		remember(index + 1, end);
+		line = index + 1;
+		next = end;
+		
+		return element(text);
+	}
+	
+	boolean hasReferences() {
+		return false;
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;										// The lines may be code, but the file isn't read just to check them
+	}
+	
+	long footprint() {
+		return 64 + CHUNK + 8L * offsets.length;		// Only the chunk and the index are held, never the lines
+	}
+	
+	// Records where the line starts (or that the file ends at the line)
+	private void remember(int at, long offset) {
+		if (offset >= length && size < 0) {
+			size = at;
+			return;
+		}
+		
+		if (at % STRIDE == 0 && at / STRIDE == indexed) {
+			if (indexed == offsets.length) offsets = java.util.Arrays.copyOf(offsets, indexed * 2);
+			offsets[indexed++] = offset;
+		}
+	}
+	
+	// Returns the offset of the line after the one starting at offset (-1 if there's no line at offset)
+	private long skip(long offset) {
+		return read(offset, null);
+	}
+	
+	// Reads the line starting at offset into text (if it isn't null). Returns the offset of the next line, or -1 if there's no line at offset
+	private long read(long offset, StringBuilder text) {
+		if (offset >= length) return -1;
+		
+		byte[] spill = null;							// The part of the line in earlier chunks (when it runs past the end of one)
+		int spilled = 0;
+		
+		for (long at = offset; at < length; ) {
+			load(at);
+			
+			byte[] bytes = chunk.array();
+			int from = (int)(at - chunkStart), end = chunk.limit(), i = from;
+			if (from >= end) break;						// The file has shrunk since it was opened
+			
+			while (i < end && bytes[i] != '\n') ++i;
+			
+			if (text != null) {
+				if (i < end && spill == null) {
+					text.append(new String(bytes, from, i - from, StandardCharsets.UTF_8));
+					return chunkStart + i + 1;
+				}
+				
+				if (spill == null) spill = new byte[CHUNK];
+				if (spilled + i - from > spill.length) spill = Arrays.copyOf(spill, java.lang.Math.max(spill.length * 2, spilled + i - from));
+				
+				System.arraycopy(bytes, from, spill, spilled, i - from);
+				spilled += i - from;
+			}
+			
+			if (i < end) {
+				if (text != null) text.append(new String(spill, 0, spilled, StandardCharsets.UTF_8));
+				return chunkStart + i + 1;
+			}
+			
+			at = chunkStart + end;
+		}
+		
+		if (spill != null) text.append(new String(spill, 0, spilled, StandardCharsets.UTF_8));
+		return length;
+	}
+	
+	// Makes sure the chunk holds the byte at offset, reading the chunk that starts there if it doesn't
+	private void load(long offset) {
+		if (chunkStart >= 0 && offset >= chunkStart && offset < chunkStart + chunk.limit()) return;
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			chunk.clear();
+			chunkStart = -1;
+			
+			while (chunk.hasRemaining() && channel.read(chunk, offset + chunk.position()) > 0);
+			
+			chunk.flip();
+			chunkStart = offset;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// Converts a line to a list element
+	private static String element(CharSequence line) {
+		String[] tokens = line.toString().trim().split("\\s+");
+		
+		if (tokens.length == 1 && !tokens[0].isEmpty())
+			return tokens[0];
+		
+		StringBuilder ret = new StringBuilder("[ ");
+		
+		for (String token : tokens)
+			if (!token.isEmpty()) ret.append(token).append(' ');
+		
+		return ret.append(']').toString();
+	}
+}
\ No newline at end of file
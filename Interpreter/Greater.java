@@ -0,0 +1,23 @@
+// All comparison operations in gloom are defined in terms of '>'
+class Greater extends TokenBase /* Compare */ {
+	public Greater(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String right = main.pop();
+		String left = main.pop();
+		long r = intValue(right), l = intValue(left);
+		
+		if (r == NOT_INT || l == NOT_INT)
+			throw notDefined(r != NOT_INT ? left : right);
+		
+		main.push(r < l ? TRUE : FALSE);
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+}
@@ -0,0 +1,13 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event emitted when a gloom file is imported
+@Name("gloom.Import")
+@Label("Gloom Import")
+@Category("Gloom")
+class ImportEvent extends Event {
+	@Label("File")
+	String file;
+}
@@ -0,0 +1,256 @@
+import java.util.Arrays;
+
+/**
+ * A list of primitive ints. This has the same interface as List but doesn't
+ * box its elements, which makes it suitable for compiled code (symbol ids)
+ * and for the contents of integer lists.
+ */
+public class IntList {
+	int[] data;
+	int top;			// the number of elements in data
+	
+	/**
+	 * Constructs a list with sensible defaults.
+	 */
+	public IntList() {
+		this(List.DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Constructs a list that can hold capacity elements before it resizes.
+	 *
+	 * @param capacity the initial capacity of the list
+	 */
+	public IntList(int capacity) {
+		data = new int[java.lang.Math.max(capacity, 1)];
+		top = 0;
+	}
+	
+	/**
+	 * Constructs a list holding the given elements. The array is not copied.
+	 *
+	 * @param elements the elements of the list
+	 */
+	public IntList(int[] elements) {
+		data = elements.length > 0 ? elements : new int[1];
+		top = elements.length;
+	}
+	
+	// Makes room for at least 'needed' elements
+	private void ensureCapacity(int needed) {
+		if (needed > data.length) {
+			data = Arrays.copyOf(data, java.lang.Math.max(needed, data.length * 2));
+		}
+	}
+	
+	// Halves the backing array once the list is using less than a quarter of it
+	private void shrink() {
+		if (data.length > List.DEFAULT_CAPACITY && top < data.length / 4) {
+			data = Arrays.copyOf(data, java.lang.Math.max(data.length / 2, List.DEFAULT_CAPACITY));
+		}
+	}
+	
+	private void checkBounds(int i) {
+		if (i < 0 || i >= top) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	private void checkBounds(int i, boolean over) {
+		if (i < 0 || i > top) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	/**
+	 * Appends the specified element to the end of this list.
+	 *
+	 * @param e element to be appended to this list
+	 */
+	public void add(int e) {
+		ensureCapacity(top + 1);
+		data[top++] = e;
+	}
+	
+	/**
+	 * Inserts the specified element at the specified position in this list.
+	 * Shifts the element currently at that position (if any) and any
+	 * subsequent elements to the right (adds one to their indices).
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * [index < 0 || index > size()]
+	 * @param index the index at which the specified element will be added
+	 * @param e element to be inserted
+	 */
+	public void add(int index, int e) {
+		checkBounds(index, true);
+		ensureCapacity(top + 1);
+		
+		System.arraycopy(data, index, data, index + 1, top - index);
+		data[index] = e;
+		++top;
+	}
+	
+	/**
+	 * Inserts every element of the specified list at the specified position in
+	 * this list. Shifts the element currently at that position (if any) and
+	 * any subsequent elements to the right.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * [index < 0 || index > size()]
+	 * @param index the index at which the first element will be added
+	 * @param other the elements to be inserted
+	 */
+	public void addAll(int index, IntList other) {
+		checkBounds(index, true);
+		
+		int n = other.top;
+		ensureCapacity(top + n);
+		
+		System.arraycopy(data, index, data, index + n, top - index);
+		System.arraycopy(other.data, 0, data, index, n);
+		top += n;
+	}
+	
+	/**
+	 * Appends every element of the specified list to the end of this list.
+	 *
+	 * @param other the elements to be appended to this list
+	 */
+	public void addAll(IntList other) {
+		addAll(top, other);
+	}
+	
+	/**
+	 * Returns the element at the specified position in this list.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * [index < 0 || index >= size()]
+	 * @param index of the element to return
+	 * @return the element at the specified position in this list
+	 */
+	public int get(int index) {
+		checkBounds(index);
+		
+		return data[index];
+	}
+	
+	/**
+	 * Removes the element at the specified position in this list. Shifts any
+	 * subsequent elements to the left (subtracts one from their indices).
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * [index < 0 || index >= size()]
+	 * @param the index of the element to be removed
+	 * @return the element previously at the specified position
+	 */
+	public int remove(int index) {
+		checkBounds(index);
+		
+		int tmp = data[index];
+		removeRange(index, index + 1);
+		return tmp;
+	}
+	
+	/**
+	 * Removes the elements in [from, to). Shifts any subsequent elements to
+	 * the left.
+	 *
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @param from the index of the first element to be removed
+	 * @param to the index after the last element to be removed
+	 */
+	public void removeRange(int from, int to) {
+		if (from < 0 || to > top || from > to) {
+			throw new IndexOutOfBoundsException();
+		}
+		
+		System.arraycopy(data, to, data, from, top - to);
+		top -= to - from;
+		shrink();
+	}
+	
+	/**
+	 * Replaces the element at the specified position in this list with the
+	 * specified element.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * [index < 0 || index >= size()]
+	 * @param index index of the element to replace
+	 * @param e element to be stored at the specified position
+	 */
+	public void set(int index, int e) {
+		checkBounds(index);
+		
+		data[index] = e;
+	}
+	
+	/**
+	 * Removes all of the elements from this list.
+	 */
+	public void clear() {
+		top = 0;
+		shrink();
+	}
+	
+	/**
+	 * Shrinks the backing array to the size of this list.
+	 */
+	public void trimToSize() {
+		if (top < data.length) {
+			data = Arrays.copyOf(data, java.lang.Math.max(top, 1));
+		}
+	}
+	
+	/**
+	 * Returns the number of elements in this list.
+	 *
+	 * @return the number of elements in this list
+	 */
+	public int size() {
+		return top;
+	}
+	
+	/**
+	 * Returns true if this list contains no elements.
+	 *
+	 * @return if this list contains no elements
+	 */
+	public boolean isEmpty() {
+		return top == 0;
+	}
+	
+	/**
+	 * Returns the backing array. Only the first size() elements are valid.
+	 *
+	 * @return the backing array
+	 */
+	public int[] internal() {
+		return data;
+	}
+	
+	/**
+	 * Returns a copy of the elements in this list.
+	 *
+	 * @return an array holding the elements of this list
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(data, top);
+	}
+	
+	/**
+	 * Generates a string represtentation of this list, in the same format as
+	 * List.toString ("[ 12 42 10 ]").
+	 *
+	 * @return the string representation of this list.
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder("[ ");
+		
+		for (int i = 0; i < top; ++i) {
+			ret.append(data[i]).append(' ');
+		}
+		
+		return ret.append(']').toString();
+	}
+}
\ No newline at end of file
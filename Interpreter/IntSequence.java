@@ -0,0 +1,160 @@
+// A list that holds only integers, stored as an int[] (4 bytes an element rather than a String each)
+// Large integer lists are converted to this when they're first read as a sequence (see Interpreter.getSequence), and modified integer lists stay one (see set)
+class IntSequence extends Sequence {
+	static final int MIN_SIZE = 64;					// Smaller lists are left as list strings (they're usually code)
+	static final int MAX_COPY = 1 << 14;			// Larger lists become a PersistentList when they're modified, as copying them every time would make a loop of modifications quadratic
+	
+	private final int[] values;
+	
+	public IntSequence(int[] values) {
+		this.values = values;
+	}
+	
+	/**
+	 * Collects the values into an integer list. Only integers that are
+	 * written the way get writes them back are accepted (eg. not +5 or 007),
+	 * so the list holds exactly the given values.
+	 *
+	 * @param vals the values
+	 * @param n the number of values to use
+	 * @return the list, or null if any value isn't such an integer
+	 */
+	static IntSequence of(String[] vals, int n) {
+		int[] ret = new int[n];
+		
+		for (int i = 0; i < n; ++i) {
+			if (!holds(vals[i])) return null;
+			ret[i] = Integer.parseInt(vals[i]);
+		}
+		
+		return new IntSequence(ret);
+	}
+	
+	// Copies the elements of a range
+	static IntSequence of(Range range) {
+		int[] ret = new int[range.size()];
+		
+		for (int i = 0; i < ret.length; ++i)
+			ret[i] = range.start() + i * range.step();
+		
+		return new IntSequence(ret);
+	}
+	
+	// Tests whether the value is an int written the way get would write it back (so storing it doesn't change it)
+	static boolean holds(String val) {
+		long v = TokenBase.intValue(val);
+		return v != TokenBase.NOT_INT && v == (int)v && isCanonical(val);
+	}
+	
+	// Tests whether the integer is written the way Integer.toString writes it (no sign but '-', no leading zeros, no -0)
+	private static boolean isCanonical(String val) {
+		int i = val.charAt(0) == '-' ? 1 : 0;
+		return val.charAt(0) != '+' && (val.charAt(i) != '0' || val.length() == 1);
+	}
+	
+	/**
+	 * Parses a list string (eg. "[ 1 2 3 ]") that holds only integers. As
+	 * with of, every integer must be written the way get writes it back.
+	 *
+	 * @param list the list string
+	 * @return the list, or null if the list holds anything but such integers
+	 */
+	static IntSequence parse(String list) {
+		IntList ret = new IntList(list.length() / 4);
+		int end = list.length() - 1;
+		
+		while (end >= 0 && list.charAt(end) == ' ') --end;
+		if (end < 2 || list.charAt(0) != '[' || list.charAt(end) != ']') return null;
+		
+		for (int i = 1; i < end; ++i) {
+			if (list.charAt(i) == ' ') continue;
+			
+			boolean negative = list.charAt(i) == '-';
+			if (negative) ++i;
+			
+			long n = 0;
+			int start = i;
+			
+			for (; i < end && list.charAt(i) != ' '; ++i) {
+				char c = list.charAt(i);
+				if (c < '0' || c > '9' || i - start >= 10) return null;
+				
+				n = n * 10 + (c - '0');
+			}
+			
+			if (i == start || (list.charAt(start) == '0' && (i - start > 1 || negative))) return null;		// Empty, or not written as get would write it
+			if (negative) n = -n;
+			if (n != (int)n) return null;
+			
+			ret.add((int)n);
+		}
+		
+		return new IntSequence(ret.toArray());
+	}
+	
+	int size() {
+		return values.length;
+	}
+	
+	String get(int index) {
+		return Integer.toString(values[index]);
+	}
+	
+	// Returns the element at the index without converting it to a string
+	int getInt(int index) {
+		return values[index];
+	}
+	
+	// Returns a copy of the elements
+	int[] toIntArray() {
+		return values.clone();
+	}
+	
+	// Finds the value in the (sorted) list. Returns the same result as Arrays.binarySearch
+	int search(int value) {
+		return java.util.Arrays.binarySearch(values, value);
+	}
+	
+	// Modifications copy the values (4 bytes an element) rather than converting the list to a PersistentList (80 bytes an element), unless the list is too large
+	// to copy or the new element isn't an int
+	Sequence set(int index, String val) {
+		if (values.length > MAX_COPY || !holds(val)) return super.set(index, val);
+		
+		int[] ret = values.clone();
+		ret[java.util.Objects.checkIndex(index, values.length)] = Integer.parseInt(val);
+		return new IntSequence(ret);
+	}
+	
+	Sequence insert(int index, String val) {
+		if (values.length > MAX_COPY || !holds(val)) return super.insert(index, val);
+		
+		java.util.Objects.checkIndex(index, values.length + 1);
+		int[] ret = new int[values.length + 1];
+		System.arraycopy(values, 0, ret, 0, index);
+		System.arraycopy(values, index, ret, index + 1, values.length - index);
+		ret[index] = Integer.parseInt(val);
+		return new IntSequence(ret);
+	}
+	
+	Sequence remove(int index) {
+		if (values.length > MAX_COPY) return super.remove(index);
+		
+		java.util.Objects.checkIndex(index, values.length);
+		int[] ret = new int[values.length - 1];
+		System.arraycopy(values, 0, ret, 0, index);
+		System.arraycopy(values, index + 1, ret, index, ret.length - index);
+		return new IntSequence(ret);
+	}
+	
+	boolean hasReferences() {
+		return false;
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+	
+	long footprint() {
+		return 32 + 4L * values.length;
+	}
+}
@@ -1,17 +1,71 @@
 import java.util.Scanner;
 import java.io.*;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
-public class Interpreter {
+public class Interpreter implements InterpreterMXBean {
 	private Stack<String> main;										// The main gloom stack
 	private Stack<String> retain;									// The retainer stack (For use in function calling as the original standard did not specify an "argument" syntax)
-	private List<String> refs;										// When a list is encountered, it is replaced with a reference. The reference refers to the list's index
-	private Map<String, TokenBase> variables;						// Map of the variable to their representation. Variables are defined in gloom
-	private static Map<String, TokenBase> literals;					// Map of literals. This is a system wide object (ie. all Gloom Interpreters share this stack) and statically defined
+	private List<Object> refs;										// When a list is encountered, it is replaced with a reference. The reference refers to the list's index (entries are list strings or lazy Sequences)
+	private Environment variables;									// The variables, indexed by their symbol id. Variables are defined in gloom (forks share the definitions made before the fork)
+	private boolean sharedRefs;										// Whether refs may be shared with a fork (it's copied, along with the constants, before it's modified)
+	private Map<String, String> constants = new HashMap<>();		// List literal text -> the text every parse of the literal stores (see constant)
+	private IntList freeRefs = new IntList();						// The indices in refs that were reclaimed (see reclaim) and may be reused
+	private int evaluating;											// The depth of nested evaluate calls (eg. imports). References are only reclaimed between top level evaluations
+	private long instructions;										// The number of tokens executed (for monitoring)
+	private long errors;											// The number of TokenErrors raised (for monitoring)
+	private ObjectName mbean;										// The name this interpreter is registered under in JMX (null if not registered)
+	private Profiler profiler;										// Per-word counters. Only set while profiling (null otherwise)
+	private Trace trace;											// The most recent calls. Only set while tracing (null otherwise)
+	private int parallelThreshold = 4096;							// Lists with at least this many elements may be processed in parallel by the higher order words
+	private int compileThreshold = 16;								// Defined words are compiled once they have been called this many times
+	private long memoryQuota;										// The most memory (approximately, in bytes) the interpreter may hold. 0 for no limit
+	private long memoryUsage;										// The memory held at the last measurement, plus the references created since
+	private long nextMemoryCheck = Long.MAX_VALUE;					// The instruction count at which memory is next measured (never, without a quota)
+	private static final int MEMORY_INTERVAL = 1 << 16;				// The fewest instructions between measurements
+	private Map<String, CompiledWord> quotations = new LinkedHashMap<String, CompiledWord>(64, 0.75f, true) {	// Compiled list text run by eval (null for text that can't be compiled). Least recently used text is dropped first
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledWord> eldest) {
+			return size() > 512;
+		}
+	};
+	private int[] localIds = new int[16];							// The symbol ids bound by let in the active frames (innermost frame last)
+	private String[] localValues = new String[16];					// The values bound to localIds
+	private int localCount;											// The number of bound locals
+	private int frame;												// The index of the first local in the current frame
+	private Appendable out = System.out;							// Where words that print (eg. debug.profile) write to
+	private static final int EVAL = Symbols.intern("eval");			// The symbol id of eval (see eval)
+	private static final int MAX_TASKS = Integer.getInteger("gloom.tasks", 256);	// The most spawned quotations that may run at once (in the whole process)
+	private static final ExecutorService tasks = new ThreadPoolExecutor(0, MAX_TASKS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {	// Runs spawned quotations. Tasks block on channels, so a task that can't start right away is refused rather than queued (a queued task could deadlock a pipeline)
+		Thread t = new Thread(r, "gloom-task");
+		t.setDaemon(true);
+		return t;
+	});
+	private static TokenBase[] literals;							// The literals, indexed by their symbol id. This is a system wide object (ie. all Gloom Interpreters share this stack) and statically defined
 
 	// Small class that handles the importing of new files from within gloom
 	private class GloomImportFile extends File {
+		private static final long serialVersionUID = 1L;
 	    public boolean isGloom;							// if isGloom = false then the imported file is java (though I never got the dynamic loading to work)
 		public boolean isJava;
 
@@ -45,9 +99,19 @@ public class Interpreter {
 		// need to add protections
 		    // if a file was already imported throws error
 		    // i need to override the previous definitions
-		if (file.isGloom)
+		if (file.isGloom) {
+			ImportEvent event = new ImportEvent();
+			event.begin();
+			
 		    evaluate(new Scanner(file));
 			
+			event.end();
+			if (event.shouldCommit()) {
+				event.file = file.getPath();
+				event.commit();
+			}
+		}
+			
 		else if (!file.isGloom) {																			// The Java "ffi" expects a single class that has a 'loadLibrary' method defined
 		    try {																							// That expects a singular Interpreter as its sole argument
 				// here's the failure line (I simply don't know how to dynamically load java classes)		// It is up to that class to, using the Interpreter's public API, register all
@@ -56,8 +120,9 @@ public class Interpreter {
 				klass.getMethod("loadLibrary", Interpreter.class).invoke(this);								// If it is not possible to do so, the variable names must be in a list when
 																											// assigning a value to it (to avoid circular reference).
 																											
-		    } catch (Exception e)
+		    } catch (Exception e) {
 				main.push(String.format("Attempt to load library %s failed: Library does not exist", file.getAbsolutePath()));
+			}
 
 		} else
 		    throw new FileNotFoundException();	
@@ -66,14 +131,63 @@ public class Interpreter {
 	public Interpreter() {
 		main = new Stack<String>();
 		retain = new Stack<String>();
-		refs = new List<String>();
-		variables = new HashMap<String, TokenBase>();
+		refs = new List<Object>();
 		setLiterals();
+		variables = new Environment(literals.length);
+	}
+	
+	// Creates a worker that shares the definitions and references of its parent but has its own stacks
+	// Workers only run pure code (see TokenBase.isPure). The parent's references are still treated as shared, so anything a worker does allocate goes to a private copy of the table rather than the parent's (see fork for an interpreter that's meant to modify them)
+	private Interpreter(Interpreter parent) {
+		main = new Stack<String>();
+		retain = new Stack<String>();
+		refs = parent.refs;
+		sharedRefs = true;
+		constants = parent.constants;
+		variables = parent.variables.fork();					// A definition made by a worker isn't seen by its parent
+		parallelThreshold = parent.parallelThreshold;
+		compileThreshold = parent.compileThreshold;
+		memoryQuota = parent.memoryQuota;
+		nextMemoryCheck = memoryQuota > 0 ? MEMORY_INTERVAL : Long.MAX_VALUE;
+		out = parent.out;
 	}
 	
 	// Initializes the system literals if they are not already set
-	private static void setLiterals() {
-		if (literals == null) literals = TokenBase.allTokens();
+	private static synchronized void setLiterals() {
+		if (literals != null) return;
+		
+		TokenBase[] ops = new TokenBase[TokenBase.operations().length];
+		
+		for (TokenBase op : TokenBase.operations()) {
+			int id = Symbols.intern(op.getToken());
+			if (id >= ops.length) ops = Arrays.copyOf(ops, id + 1);
+			ops[id] = op;
+		}
+		
+		literals = ops;
+	}
+	
+	// Creates an interpreter that starts with this interpreter's definitions and references but has its own stacks
+	// Definitions and lists created (or modified) in one of the interpreters are not seen by the other. The interpreters share the definitions (see Environment)
+	// and the reference table, but the first list either of them then creates or modifies copies the whole table and its constants (see ownReferences)
+	public Interpreter fork() {
+		Interpreter ret = new Interpreter(this);
+		ret.sharedRefs = sharedRefs = true;
+		
+		return ret;
+	}
+	
+	// Returns the reference table, copying it first if it may be shared with a fork
+	private List<Object> ownReferences() {
+		if (sharedRefs) {
+			List<Object> copy = new List<Object>(refs.size());
+			copy.addAll(refs);
+			refs = copy;
+			constants = new HashMap<>(constants);
+			sharedRefs = false;
+		}
+		
+		return refs;
 	}
 	
 	// Translates a gloom reference to its list index
@@ -81,21 +195,215 @@ public class Interpreter {
 		return TokenBase.toInt(ref.substring(1)) - 1;
 	}
 	
+	// Stores the entry in a reclaimed slot of the table (or at its end), returning its reference
+	private String store(Object entry) {
+		allocated(entry);
+		ownReferences();
+		
+		if (freeRefs.isEmpty()) {
+			refs.append(entry);
+			return "&" + refs.size();
+		}
+		
+		int n = freeRefs.remove(freeRefs.size() - 1);
+		refs.set(n, entry);
+		return "&" + (n + 1);
+	}
+	
 	// Creates a new reference for the given list
 	public String newReference(String list) {
-		refs.append(list);
-		return "&" + refs.size();
+		return store(list);
+	}
+	
+	// Creates a new reference for a lazy list. The sequence is only turned into a list string once it's modified
+	public String newReference(Sequence list) {
+		return store(list);
 	}
 	
 	// Sets the given reference to point to the new list
 	public String setReference(String ref, String list) {
-		refs.set(refNumber(ref), list);
+		ownReferences().set(refNumber(ref), list);
+		return ref;
+	}
+	
+	// Sets the given reference to point to the new (lazy or persistent) list
+	public String setReference(String ref, Sequence list) {
+		ownReferences().set(refNumber(ref), list);
 		return ref;
 	}
 	
-	// Get the list pointed to by the reference
+	// Returns a new reference for a list literal. Every parse gets its own reference (so modifying the list one parse made is never seen by another), but the
+	// references made for the same text share a single copy of it. Literals that hold other lists are never parsed to the same text again, so they aren't pooled
+	private String constant(String list) {
+		if (list.indexOf('&') >= 0) return newReference(list);
+		
+		ownReferences();													// The pool is copied along with the table
+		String shared = constants.putIfAbsent(list, list);
+		return newReference(shared != null ? shared : list);
+	}
+	
+	// Returns the list pointed to by the reference as a PersistentList. Other lists are converted, but the conversion isn't stored (reading a list leaves it in its
+	// compact form, see Sequence.set for how modifications are stored). Returns null if the reference doesn't hold a list (eg. a map)
+	public PersistentList getPersistent(String ref) {
+		Object list = refs.get(refNumber(ref));
+		if (list instanceof Dict) return null;
+		
+		return PersistentList.of(list instanceof Sequence ? (Sequence)list : Sequence.of(TokenBase.elements((String)list)));
+	}
+	
+	// Get the list pointed to by the reference (lazy lists are rendered, but aren't replaced)
 	public String getReference(String ref) {
-		return refs.get(refNumber(ref));
+		return refs.get(refNumber(ref)).toString();
+	}
+	
+	// Returns the lazy list pointed to by the reference, or null if the reference holds a list string
+	// Large list strings that hold only integers are converted to an IntSequence. The conversion replaces the string in the table (so it's only made once) unless the table is shared, as reading a list mustn't copy or modify a shared table
+	public Sequence getSequence(String ref) {
+		int n = refNumber(ref);
+		Object list = refs.get(n);
+		
+		if (list instanceof String && ((String)list).length() >= 2 * IntSequence.MIN_SIZE) {
+			IntSequence ints = IntSequence.parse((String)list);
+			
+			if (ints != null && !sharedRefs)
+				refs.set(n, ints);							// The same list, so anything holding the reference is unaffected
+			
+			if (ints != null) return ints;
+		}
+		
+		return list instanceof Sequence ? (Sequence)list : null;
+	}
+	
+	// Creates a new reference to an empty map
+	public String newMap() {
+		return newReference(new Dict(ownReferences()));
+	}
+	
+	// Creates a new reference for the map
+	private String newReference(Dict map) {
+		return store(map);
+	}
+	
+	// Returns the map pointed to by the reference, or null if the reference doesn't hold a map. The map must not be modified (see ownMap)
+	public Dict getMap(String ref) {
+		Object map = refs.get(refNumber(ref));
+		return map instanceof Dict ? (Dict)map : null;
+	}
+	
+	// Returns the map pointed to by the reference so that it can be modified. A map shared with a fork is copied first. Returns null if the reference doesn't hold a map
+	public Dict ownMap(String ref) {
+		int n = refNumber(ref);
+		
+		if (!(refs.get(n) instanceof Dict)) return null;
+		
+		Dict map = (Dict)refs.get(n);
+		
+		if (!map.ownedBy(ownReferences())) {
+			map = map.copy(refs);
+			refs.set(n, map);
+		}
+		
+		return map;
+	}
+	
+	// Creates a new reference to a copy of the map
+	public String copyMap(Dict map) {
+		return newReference(map.copy(ownReferences()));
+	}
+	
+	// Tests whether the reference holds a value that is used by reference rather than evaluated (a map, a channel or a task)
+	public boolean isHandle(String ref) {
+		Object entry = refs.get(refNumber(ref));
+		return !(entry instanceof String || entry instanceof Sequence);
+	}
+	
+	// Returns the type of the value held by the reference ("map", "channel" or "task"), or null if it holds a list
+	public String handleType(String ref) {
+		Object entry = refs.get(refNumber(ref));
+		
+		if (entry instanceof Dict) return "map";
+		if (entry instanceof Channel) return "channel";
+		if (entry instanceof Task) return "task";
+		
+		return null;
+	}
+	
+	// Creates a reference to an object that isn't a list (eg. a channel or a task)
+	public String newHandle(Object handle) {
+		return store(handle);
+	}
+	
+	// Returns the object pointed to by the reference if it has the given type (null otherwise)
+	public <T> T getHandle(String ref, Class<T> type) {
+		Object handle = refs.get(refNumber(ref));
+		return type.isInstance(handle) ? type.cast(handle) : null;
+	}
+	
+	// Converts a value to a form that can be passed to another interpreter (see adopt). References are only valid in the interpreter that made them, so lists and maps are copied
+	Object export(String value) {
+		if (!TokenBase.isReference(value))
+			return value;
+		
+		Object entry = refs.get(refNumber(value));
+		
+		if (entry instanceof Dict) {
+			Map<String, Object> ret = new LinkedHashMap<>();
+			
+			for (Map.Entry<String, String> e : ((Dict)entry).entries())
+				ret.put(e.getKey(), export(e.getValue()));
+			
+			return ret;
+		}
+		
+		if (entry instanceof Channel || entry instanceof Task || (entry instanceof Sequence && !((Sequence)entry).hasReferences()))
+			return entry;															// Shared rather than copied (lazy lists are immutable)
+		
+		return Sequence.of(TokenBase.elements(expandReferences(value)));
+	}
+	
+	// Stores a value exported by another interpreter, returning the value to push
+	@SuppressWarnings("unchecked")
+	String adopt(Object value) {
+		if (value instanceof String)
+			return (String)value;
+		
+		if (value instanceof Sequence)
+			return newReference((Sequence)value);
+		
+		if (value instanceof Map) {
+			Dict map = new Dict(ownReferences());
+			
+			for (Map.Entry<String, Object> e : ((Map<String, Object>)value).entrySet())
+				map.put(e.getKey(), adopt(e.getValue()));
+			
+			return newReference(map);
+		}
+		
+		return newHandle(value);
+	}
+	
+	// Runs the quotation on a fork of this interpreter on another thread. The fork's stack starts with the given values (bottom to top)
+	// Throws a RejectedExecutionException if MAX_TASKS tasks are already running
+	Task spawn(String body, String[] args) {
+		Interpreter child = fork();
+		
+		for (String arg : args)
+			child.main.push(arg);
+		
+		return new Task(tasks.submit(() -> {
+			child.eval(body);
+			return child;
+		}));
+	}
+	
+	// Waits for the task to finish and pushes what it left on its stack (bottom to top)
+	void join(Task task) throws InterruptedException, ExecutionException {
+		Interpreter child = task.join();
+		
+		for (Object value : child.main.toArray())
+			main.push(adopt(child.export((String)value)));
+		
+		instructions += child.instructions;
 	}
 	
 	/* private String collect(Scanner scanner, String recur, String match, boolean addRefs) {
@@ -145,7 +453,7 @@ public class Interpreter {
 			switch (token) {
 				case "[":
 					token = parse(scanner, addRefs).toString();
-					if (addRefs) token = newReference(token);
+					if (addRefs) token = constant(token);
 					break;
 				
 				case "(":
@@ -180,10 +488,32 @@ public class Interpreter {
 		executeCode(parse(new Scanner(file), false));
 	}
 	
+	// Resolves the names in a parsed list to their symbol ids (Symbols.NONE for data, Symbols.UNBOUND for names that aren't interned). Names are replaced by the shared symbol string
+	public IntList compile(List<String> code) {
+		IntList ids = new IntList(code.size());
+		
+		for (int i = 0; i < code.size(); ++i) {
+			int id = Symbols.find(code.get(i));
+			
+			if (id >= 0) code.set(i, Symbols.name(id));
+			ids.add(id);
+		}
+		
+		return ids;
+	}
+	
 	// Executes a parsed list 
 	public void executeCode(List<String> code) {
-		for (int i = 0; i < code.size(); ++i) {			// I can reduce these lines to "for (String token : code) {" if I'd use the standard list
-			String token = code.get(i);
+		executeCode(code, compile(code).internal());
+	}
+	
+	// Executes a parsed list whose names were already resolved by compile
+	private void executeCode(List<String> code, int[] ids) {
+		int i = 0;
+		instructions += code.size();
+		
+		for (String token : code) {
+			int id = ids[i++];
 			
 			switch (token.charAt(0)) {
 				case '$':	// "Named" arguments
@@ -191,38 +521,647 @@ public class Interpreter {
 					break;
 					
 				default:
-					if (!call(token))
+					if (!call(Symbols.resolve(id, token)))
 						main.push(token);
 			}
 		}
 	}
 	
+	// Runs the value and then evals the result. This is the same as execute(value + " eval") without parsing the text
+	public void eval(String value) {
+		executeToken(value);
+		
+		++instructions;
+		if (!call(EVAL)) main.push("eval");
+	}
+	
+	// Runs a single token the way executeCode would (eg. a value substituted for a named argument)
+	void executeToken(String token) {
+		if (token.isEmpty()) return;
+		
+		if (token.indexOf(' ') >= 0 && token.charAt(0) != '[') {		// Not a single token after all
+			execute(token);
+			return;
+		}
+		
+		++instructions;
+		
+		if (token.charAt(0) == '$')
+			main.push(token.substring(1));
+		else if (!Symbols.isName(token) || !call(Symbols.lookup(token)))
+			main.push(token);
+	}
+	
+	// Counts tokens run by compiled words (see CompiledWord)
+	void countInstructions(int n) {
+		instructions += n;
+	}
+	
+	// Parses the source once so that it can be run many times. Lists in the source are added to this interpreter's references
+	public Program compileProgram(String source) {
+		List<String> code = parse(new Scanner(source), true);
+		return new Program(code, compile(code).internal());
+	}
+	
+	// Runs the program with the given values (bottom to top) on the main stack. Returns the resulting stack, with references expanded
+	public Stack<?> run(Program program, Stack<String> input) {
+		clear();
+		
+		for (Object value : input.toArray())
+			main.push((String)value);
+		
+		executeCode(program.code, program.ids);
+		return stack();
+	}
+	
+	// Runs the program once for every input (see run), spreading the inputs over the given number of threads
+	// Every input is run by its own fork of this interpreter, so runs can't see each other
+	public java.util.List<Stack<?>> runBatch(Program program, java.util.List<Stack<String>> inputs, int threads) {
+		Stack<?>[] results = new Stack<?>[inputs.size()];
+		int workers = java.lang.Math.max(1, java.lang.Math.min(threads, inputs.size()));
+		int chunk = (inputs.size() + workers - 1) / workers;
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		
+		try {
+			java.util.List<Future<?>> tasks = new java.util.ArrayList<>();
+			
+			for (int w = 0; w < workers; ++w) {
+				int from = w * chunk, to = java.lang.Math.min(inputs.size(), from + chunk);
+				Interpreter worker = fork();						// Forks are created by the thread that owns the interpreter being forked
+				
+				tasks.add(pool.submit(() -> {
+					for (int i = from; i < to; ++i)
+						results[i] = worker.fork().run(program, inputs.get(i));
+				}));
+			}
+			
+			for (Future<?> task : tasks)
+				task.get();
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Batch was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Batch failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		
+		return Arrays.asList(results);
+	}
+	
 	// Dispatches a call to the gloom token specified by 'function'
 	public boolean call(String function) {
+		return call(Symbols.lookup(function));
+	}
+	
+	// Dispatches a call to the gloom token with the given symbol id
+	public boolean call(int id) {
+		if (localCount > frame) {
+			String value = local(id);
+			
+			if (value != null) {
+				main.push(value);
+				return true;
+			}
+		}
+		
+		return call(id, resolve(id));
+	}
+	
+	// Tests whether a call may skip dispatch (ie. no let bindings could shadow the token and no profiler or trace needs to see the call)
+	boolean canQuicken() {
+		return localCount <= frame && profiler == null && trace == null;
+	}
+	
+	// Dispatches a call to a token that was resolved ahead of time (see CompiledWord). Let bindings are still checked first
+	boolean call(int id, TokenBase function) {
+		if (instructions >= nextMemoryCheck) checkMemory();
+		
+		if (localCount > frame) {
+			String value = local(id);
+			
+			if (value != null) {
+				main.push(value);
+				return true;
+			}
+		}
+		
+		if (function == null)
+			return false;
+		
+		Profiler p = profiler;
+		if (p != null) p.enter(id);
+		
+		Trace t = trace;
+		if (t != null) t.record(id, main.size());
+		
+		try {
+			function.run(this, main, retain);
+		} catch (QuotaError e) {
+			throw e;													// Stops the whole evaluation (see evaluate)
+		} catch (TokenError e) {
+			++errors;
+			if (t != null && t.dumpsOnError()) dumpTrace(e.what());
+			main.push(e.value());
+		} finally {
+			if (p != null) p.exit();
+		}
+		
+		return true;
+	}
+	
+	// Starts a new frame for let bindings. Returns the previous frame, which must be passed to exitFrame
+	public int enterFrame() {
+		int ret = frame;
+		frame = localCount;
+		return ret;
+	}
+	
+	// Drops the current frame's let bindings and returns to the given frame
+	public void exitFrame(int previous) {
+		Arrays.fill(localValues, frame, localCount, null);
+		localCount = frame;
+		frame = previous;
+	}
+	
+	// Binds the value to the symbol id in the current frame. The binding shadows variables and literals until the frame exits
+	public void bindLocal(int id, String value) {
+		for (int i = frame; i < localCount; ++i) {
+			if (localIds[i] == id) {
+				localValues[i] = value;
+				return;
+			}
+		}
+		
+		if (localCount == localIds.length) {
+			localIds = Arrays.copyOf(localIds, localCount * 2);
+			localValues = Arrays.copyOf(localValues, localCount * 2);
+		}
+		
+		localIds[localCount] = id;
+		localValues[localCount++] = value;
+	}
+	
+	// Returns the value bound to the symbol id in the current frame (null if it isn't bound)
+	public String local(int id) {
+		for (int i = localCount - 1; i >= frame; --i)
+			if (localIds[i] == id) return localValues[i];
+		
+		return null;
+	}
+	
+	// Finds the token bound to the symbol id (variables shadow literals). Returns null if the id is not bound
+	public TokenBase resolve(int id) {
+		if (id < 0)
+			return null;
+		
+		TokenBase ret = variables.get(id);
+		if (ret != null) return ret;
+		
+		return id < literals.length ? literals[id] : null;
+	}
+	
+	// Starts counting and timing every call. If interval > 0, the executing word is also sampled every interval microseconds
+	public Profiler startProfiling(long interval) {
+		stopProfiling();
+		profiler = new Profiler(interval);
+		return profiler;
+	}
+	
+	// Stops profiling, returning the collected data (null if the interpreter was not being profiled)
+	public Profiler stopProfiling() {
+		Profiler p = profiler;
+		
+		if (p != null) p.stop();
+		profiler = null;
+		
+		return p;
+	}
+	
+	// Starts recording the most recent calls (capacity of them) into a new trace. If dumpOnError, the trace is written to the output whenever a TokenError is raised
+	public Trace startTracing(int capacity, boolean dumpOnError) {
+		trace = new Trace(capacity, dumpOnError);
+		return trace;
+	}
+	
+	// Stops tracing, returning the recorded calls (null if the interpreter was not being traced)
+	public Trace stopTracing() {
+		Trace t = trace;
+		trace = null;
+		return t;
+	}
+	
+	// Returns the active trace (null if the interpreter is not being traced)
+	public Trace trace() {
+		return trace;
+	}
+	
+	// Writes the active trace to the output, headed by the reason
+	public void dumpTrace(String reason) {
+		Trace t = trace;
+		if (t == null) return;
+		
 		try {
-			if (variables.containsKey(function))
-				variables.get(function).run(this, main, retain);
+			t.dump(out, "Trace: " + reason + " (" + t.count() + " calls)");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// Sets where words that print write their output
+	public void setOutput(Appendable out) {
+		this.out = out;
+	}
+	
+	// Returns where words that print write their output
+	public Appendable output() {
+		return out;
+	}
+	
+	// Returns the active profiler (null if the interpreter is not being profiled)
+	public Profiler profiler() {
+		return profiler;
+	}
+	
+	// Tests whether running the code can only affect the main stack (see TokenBase.isPure)
+	public boolean isPure(String code, java.util.Set<Object> visited) {
+		for (String token : code.split(" ")) {
+			if (token.isEmpty() || "[".equals(token) || "]".equals(token))
+				continue;
+			
+			if (TokenBase.isReference(token)) {
+				if (!visited.add(token)) continue;
 				
-			else if (literals.containsKey(function))
-				literals.get(function).run(this, main, retain);
+				Object entry = refs.get(refNumber(token));								// Modified and restored lists (see Snapshot) hold code as well as list strings
+				if (entry instanceof String ? !isPure((String)entry, visited) : entry instanceof Sequence && !((Sequence)entry).isPure(this, visited)) return false;
 				
-			else
-				return false;
-		
-		} catch (TokenError e)
-			main.push(e.what());
+			} else if (Symbols.isName(token)) {
+				if (local(Symbols.lookup(token)) != null) return false;		// Workers can't see this interpreter's frame
+				
+				TokenBase function = resolve(Symbols.lookup(token));
+				if (function != null && !function.isPure(this, visited)) return false;
+			}
+		}
 		
 		return true;
 	}
 	
+	// Sets the number of elements a list needs before the higher order words (map, filter, reduce) will run in parallel
+	public void setParallelThreshold(int n) {
+		parallelThreshold = n;
+	}
+	
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+	
+	// Sets the number of calls a defined word needs before it's compiled (see CompiledWord). A negative threshold disables compilation
+	public void setCompileThreshold(int n) {
+		compileThreshold = n;
+	}
+	
+	public int getCompileThreshold() {
+		return compileThreshold;
+	}
+	
+	// Returns the compiled form of list text that's about to be run by eval (null if it can't be compiled)
+	CompiledWord quotation(String list) {
+		if (compileThreshold < 0) return null;
+		
+		CompiledWord ret = quotations.get(list);
+		
+		if (ret == null ? !quotations.containsKey(list) : !ret.isValid(this)) {
+			ret = CompiledWord.compile(this, list);
+			quotations.put(list, ret);
+		}
+		
+		return ret;
+	}
+	
+	// Limits the memory (approximately, in bytes) held by the stacks, the references and the definitions. 0 removes the limit
+	// Going over the quota raises a QuotaError, which stops the evaluation. Memory is measured every so often (see checkMemory), so the quota may be briefly exceeded
+	// References that are no longer reachable are reclaimed after a top level evaluation once half the quota is in use (see reclaim), so what a script drops is freed for the next evaluation
+	public void setMemoryQuota(long bytes) {
+		memoryQuota = java.lang.Math.max(bytes, 0);
+		nextMemoryCheck = memoryQuota > 0 ? instructions : Long.MAX_VALUE;
+	}
+	
+	public long getMemoryQuota() {
+		return memoryQuota;
+	}
+	
+	// Measures the approximate number of bytes held by part of the interpreter ("main", "retain", "refs", "variables" or "all")
+	public long memoryUsage(String part) {
+		switch (part) {
+			case "main":
+				return main.footprint(Interpreter::footprint);
+				
+			case "retain":
+				return retain.footprint(Interpreter::footprint);
+				
+			case "refs":
+				long ret = 16;
+				
+				for (Object entry : refs)
+					ret += 8 + footprint(entry);
+				
+				return ret;
+				
+			case "variables":
+				ret = 16;
+				
+				for (TokenBase var : variables.toArray())
+					ret += 8 + (var instanceof Variable ? ((Variable)var).footprint() : 0);
+				
+				return ret;
+				
+			case "all":
+				return memoryUsage("main") + memoryUsage("retain") + memoryUsage("refs") + memoryUsage("variables");
+				
+			default:
+				throw new IllegalArgumentException("Unknown part " + part);
+		}
+	}
+	
+	// The approximate number of bytes held by a stack value or a reference table entry
+	private static long footprint(Object value) {
+		if (value == null) return 0;											// A reclaimed slot
+		if (value instanceof String) return 40 + ((String)value).length();
+		if (value instanceof Sequence) return ((Sequence)value).footprint();
+		if (value instanceof Dict) return ((Dict)value).footprint();
+		if (value instanceof Channel) return ((Channel)value).footprint();
+		
+		return 64;
+	}
+	
+	// Measures the memory held and raises a QuotaError if it's over the quota
+	// Measuring takes time proportional to what's held, so the next measurement is put off for at least as many instructions (keeping the cost per instruction constant)
+	private void checkMemory() {
+		memoryUsage = memoryUsage("all");
+		nextMemoryCheck = instructions + java.lang.Math.max(MEMORY_INTERVAL, (long)main.size() + retain.size() + refs.size() + variables.size());
+		
+		if (memoryUsage > memoryQuota) {
+			++errors;
+			throw new QuotaError("Error in quota: %d bytes are in use, the quota is %d bytes", memoryUsage, memoryQuota);
+		}
+	}
+	
+	// Frees the references that can't be reached from the stacks or the definitions, so their slots can be reused
+	// Only safe while no code is running (code being run may hold references that nothing else does), so it's only done between top level evaluations. A shared table is left alone
+	private void reclaim() {
+		if (sharedRefs || localCount > 0) return;
+		
+		BitSet live = new BitSet(refs.size());
+		IntList pending = new IntList();
+		
+		for (Object value : main.toArray()) mark((String)value, live, pending);
+		for (Object value : retain.toArray()) mark((String)value, live, pending);
+		
+		for (TokenBase var : variables.toArray())
+			if (var instanceof Variable) mark(((Variable)var).getBody(), live, pending);
+		
+		while (!pending.isEmpty()) {
+			Object entry = refs.get(pending.remove(pending.size() - 1));
+			
+			if (entry instanceof String) {
+				mark((String)entry, live, pending);
+			
+			} else if (entry instanceof Dict) {
+				for (Map.Entry<String, String> e : ((Dict)entry).entries()) {
+					mark(e.getKey(), live, pending);
+					mark(e.getValue(), live, pending);
+				}
+			
+			} else if (entry instanceof Sequence && ((Sequence)entry).hasReferences()) {
+				Sequence list = (Sequence)entry;
+				
+				for (int i = 0; i < list.size(); ++i)
+					mark(list.get(i), live, pending);
+			}
+		}
+		
+		freeRefs.clear();
+		
+		for (int n = 0; n < refs.size(); ++n) {
+			if (!live.get(n)) {
+				refs.set(n, null);
+				freeRefs.add(n);
+			}
+		}
+		
+		memoryUsage = memoryUsage("all");
+	}
+	
+	// Marks the references in the text as live, adding the ones that weren't already to pending
+	private void mark(String text, BitSet live, IntList pending) {
+		if (text.indexOf('&') < 0) return;
+		
+		for (String token : text.split(" ")) {
+			if (!TokenBase.isReference(token)) continue;
+			
+			int n = refNumber(token);
+			
+			if (n >= 0 && n < refs.size() && !live.get(n)) {
+				live.set(n);
+				pending.add(n);
+			}
+		}
+	}
+	
+	// Counts a new reference table entry against the quota. It's measured properly once the estimate is over the quota
+	private void allocated(Object entry) {
+		if (memoryQuota > 0 && (memoryUsage += footprint(entry)) > memoryQuota)
+			checkMemory();
+	}
+	
+	// Returns the variable environment. Compiled words are only valid while its bindings are the ones they were compiled against (see Environment.stamp)
+	Environment environment() {
+		return variables;
+	}
+	
+	// Runs the word on a worker whose stack holds only the input (bottom to top). Returns what the word left (bottom to top), or null if it raised an error (see Memo)
+	String[] runIsolated(Variable word, String[] in) {
+		Interpreter worker = new Interpreter(this);
+		
+		for (String value : in)
+			worker.main.push(value);
+		
+		try {
+			word.invoke(worker, worker.main);
+		} catch (QuotaError e) {
+			throw e;													// Stops the whole evaluation, as it would if the word had been run normally
+		} catch (TokenError | java.util.NoSuchElementException e) {
+			return null;
+		} finally {
+			instructions += worker.instructions;
+		}
+		
+		if (worker.errors > 0 || worker.refs != refs) return null;		// Anything the worker allocated is in its private table
+		
+		Object[] values = worker.main.toArray();
+		return Arrays.copyOf(values, values.length, String[].class);
+	}
+	
+	// Runs the quotation on every element (each on a stack holding only that element) on the fork-join pool
+	// Returns null if any element didn't leave exactly one (non-error) value, in which case the caller should run sequentially
+	String[] parallelMap(String body, Sequence elems) {
+		String[] ret = new String[elems.size()];
+		int leaf = java.lang.Math.max(64, elems.size() / (4 * ForkJoinPool.getCommonPoolParallelism()));
+		
+		class MapTask extends RecursiveTask<Long> {
+			private static final long serialVersionUID = 1L;
+			final int from, to;
+			
+			MapTask(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+			
+			protected Long compute() {
+				if (to - from > leaf) {
+					int mid = (from + to) >>> 1;
+					MapTask left = new MapTask(from, mid);
+					left.fork();
+					
+					long right = new MapTask(mid, to).compute();
+					long l = left.join();
+					return (l < 0 || right < 0) ? -1 : l + right;
+				}
+				
+				Interpreter worker = new Interpreter(Interpreter.this);
+				
+				for (int i = from; i < to; ++i) {
+					worker.main.push(elems.get(i));
+					worker.execute(body + " eval");
+					
+					if (worker.main.size() != 1 || TokenBase.isError(worker.main.top()) || worker.refs != Interpreter.this.refs)
+						return -1L;											// The result may be a reference to the worker's private table
+					
+					ret[i] = worker.main.pop();
+				}
+				
+				return worker.instructions;
+			}
+		}
+		
+		long executed = ForkJoinPool.commonPool().invoke(new MapTask(0, elems.size()));
+		if (executed < 0) return null;
+		
+		instructions += executed;
+		return ret;
+	}
+	
+	// Combines the elements with the (associative) quotation on the fork-join pool. Returns null if any step failed
+	String parallelReduce(String body, Sequence elems) {
+		int leaf = java.lang.Math.max(64, elems.size() / (4 * ForkJoinPool.getCommonPoolParallelism()));
+		
+		class ReduceTask extends RecursiveTask<String> {
+			private static final long serialVersionUID = 1L;
+			final int from, to;
+			
+			ReduceTask(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+			
+			// Applies the quotation to acc and val on the worker's stack
+			private String combine(Interpreter worker, String acc, String val) {
+				worker.main.push(acc);
+				worker.main.push(val);
+				worker.execute(body + " eval");
+				
+				if (worker.main.size() != 1 || TokenBase.isError(worker.main.top()) || worker.refs != Interpreter.this.refs)
+					return null;
+				
+				return worker.main.pop();
+			}
+			
+			protected String compute() {
+				Interpreter worker = new Interpreter(Interpreter.this);
+				
+				if (to - from > leaf) {
+					int mid = (from + to) >>> 1;
+					ReduceTask left = new ReduceTask(from, mid);
+					left.fork();
+					
+					String right = new ReduceTask(mid, to).compute();
+					String l = left.join();
+					return (l == null || right == null) ? null : combine(worker, l, right);
+				}
+				
+				String acc = elems.get(from);
+				
+				for (int i = from + 1; i < to && acc != null; ++i)
+					acc = combine(worker, acc, elems.get(i));
+				
+				return acc;
+			}
+		}
+		
+		return ForkJoinPool.commonPool().invoke(new ReduceTask(0, elems.size()));
+	}
+	
 	// Associates a new variable to the interpreter state
 	public void addVariable(TokenBase variable) {
-		variables.put(variable.getToken(), variable);
+		variables.put(Symbols.intern(variable.getToken()), variable);
+	}
+	
+	// Writes the definitions, references and both stacks to the file (see Snapshot)
+	public void saveSnapshot(String file) throws IOException {
+		Snapshot.write(Paths.get(file), variables.toArray(), main, retain, refs);
+	}
+	
+	// Replaces the definitions, references and both stacks with those saved in the file. Saved lists are only read when they're first used
+	public void loadSnapshot(String file) throws IOException {
+		Snapshot snapshot = Snapshot.read(Paths.get(file));
+		
+		variables = new Environment(literals.length);
+		
+		for (Variable var : snapshot.variables)
+			addVariable(var);
+		
+		refs = snapshot.refs;
+		constants = new HashMap<>();
+		freeRefs = new IntList();
+		sharedRefs = false;
+		clear();
+		
+		for (String value : snapshot.main)
+			main.push(value);
+		
+		for (String value : snapshot.retain)
+			retain.push(value);
 	}
 	
 	// Evaluates the code "owned" by the scanner
 	public void evaluate(Scanner scanner) {
-		executeCode(parse(scanner, true));
+		EvaluateEvent event = new EvaluateEvent();
+		long start = instructions;
+		event.begin();
+		
+		int previous = enterFrame();
+		++evaluating;
+		
+		try {
+			executeCode(parse(scanner, true));
+		} catch (QuotaError e) {
+			Trace t = trace;
+			if (t != null && t.dumpsOnError()) dumpTrace(e.what());
+			main.push(e.value());										// The rest of the code isn't run
+		} finally {
+			exitFrame(previous);
+			
+			if (--evaluating == 0 && memoryQuota > 0 && memoryUsage > memoryQuota / 2)
+				reclaim();
+		}
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.instructions = instructions - start;
+			event.depth = main.size();
+			event.commit();
+		}
 	}
 	
 	// Evaluates the String code (eg. for a cmd-line interpreter)
@@ -230,6 +1169,57 @@ public class Interpreter {
 		evaluate(new Scanner(input));
 	}
 	
+	// Publishes this interpreter's InterpreterMXBean as "gloom:type=Interpreter,name=<name>"
+	public void registerMBean(String name) {
+		try {
+			ObjectName oname = new ObjectName("gloom", new Hashtable<>(Map.of("type", "Interpreter", "name", ObjectName.quote(name))));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, oname);
+			mbean = oname;
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register interpreter " + name, e);
+		}
+	}
+	
+	// Removes this interpreter from JMX (does nothing if it was never registered)
+	public void unregisterMBean() {
+		if (mbean == null) return;
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean);
+		} catch (JMException e) {
+		}
+		
+		mbean = null;
+	}
+	
+	public int getMainDepth() {
+		return main.size();
+	}
+	
+	public int getRetainDepth() {
+		return retain.size();
+	}
+	
+	public int getReferenceCount() {
+		return refs.size();
+	}
+	
+	public int getVariableCount() {
+		return variables.size();
+	}
+	
+	public long getMemoryUsage() {
+		return memoryUsage("all");
+	}
+	
+	public long getInstructionsExecuted() {
+		return instructions;
+	}
+	
+	public long getErrorCount() {
+		return errors;
+	}
+	
 	// Clears the two stacks
 	public void clear() {
 		main.clear();
@@ -238,44 +1228,212 @@ public class Interpreter {
 	
 	// Recursively expands references to the "complete" list (ie. &1 -> [1])
 	public String expandReferences(String list) {
-		String ret = "";
+		StringBuilder ret = new StringBuilder(list.length());
+		
+		try {
+			renderList(ret, list, new BitSet(), -1);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);			// StringBuilder doesn't throw
+		}
+		
+		return ret.toString();
+	}
+	
+	// Writes the main stack to out, expanding every reference. At most limit elements of each list are written (limit < 0 for no limit)
+	public void render(Appendable out, int limit) throws IOException {
+		BitSet open = new BitSet();
+		
+		out.append("[ ");
+		
+		for (Object value : main.toArray()) {
+			render(out, (String)value, open, limit);
+			out.append(' ');
+		}
+		
+		out.append(']');
+	}
+	
+	// Renders a single value. 'open' marks the references currently being expanded so that self-referencing lists terminate
+	private void render(Appendable out, String value, BitSet open, int limit) throws IOException {
+		if (TokenBase.isReference(value)) {
+			int ref = refNumber(value);
+			
+			if (open.get(ref)) {
+				out.append(value);									// A list that contains itself is only expanded once
+				return;
+			}
+			
+			open.set(ref);
+			
+			if (refs.get(ref) instanceof Sequence)
+				renderSequence(out, (Sequence)refs.get(ref), open, limit);
+			else if (refs.get(ref) instanceof Dict)
+				renderMap(out, (Dict)refs.get(ref), open, limit);
+			else if (!(refs.get(ref) instanceof String))
+				out.append(refs.get(ref).toString());				// A channel or a task
+			else
+				renderList(out, (String)refs.get(ref), open, limit);
+			
+			open.clear(ref);
+			
+		} else if (value.charAt(0) == '[')
+			renderList(out, value, open, limit);
+			
+		else if (TokenBase.isError(value))
+			out.append(value.replace(TokenBase.ERROR_SPACE, ' '));		// Error values are displayed with normal spaces
+			
+		else
+			out.append(value);
+	}
+	
+	// Renders a lazy list straight from its elements
+	private void renderSequence(Appendable out, Sequence list, BitSet open, int limit) throws IOException {
+		int n = limit < 0 ? list.size() : java.lang.Math.min(limit, list.size());
+		
+		out.append('[');
 		
-		for (String token : list.split(" ")) {			
-			if (!"[".equals(token))
-				if (TokenBase.isReference(token))
-					token = expandReferences(getReference(token));
+		for (int i = 0; i < n; ++i) {
+			out.append(' ');
+			render(out, list.get(i), open, limit);
+		}
+		
+		out.append(n < list.size() ? " ... ]" : " ]");
+	}
+	
+	// Renders the entries of a map (keys and values in pairs, eg. "{ a 1 b [ 2 ] }")
+	private void renderMap(Appendable out, Dict map, BitSet open, int limit) throws IOException {
+		int n = 0;
+		
+		out.append('{');
+		
+		for (Map.Entry<String, String> e : map.entries()) {
+			if (limit >= 0 && n++ == limit) {
+				out.append(" ...");
+				break;
+			}
 			
-			ret = ret + " " + token;
+			out.append(' ').append(e.getKey()).append(' ');
+			render(out, e.getValue(), open, limit);
 		}
+		
+		out.append(" }");
+	}
+	
+	// Renders the space separated tokens of a list without splitting it
+	private void renderList(Appendable out, String list, BitSet open, int limit) throws IOException {
+		int depth = 0, count = 0;
+		boolean started = false, skip = false;
+		
+		for (int i = 0, end; i < list.length(); i = end + 1) {
+			end = list.indexOf(' ', i);
+			if (end < 0) end = list.length();
+			if (end == i) continue;
+			
+			char c = list.charAt(i);
+			boolean bracket = end - i == 1 && (c == '[' || c == ']');
+			
+			if (bracket && c == ']')
+				--depth;
+			else if (depth == 1 && limit >= 0 && count++ == limit) {
+				out.append(" ...");									// Elements past the limit are elided
+				skip = true;
+			}
 			
-		return ret.substring(1);
+			if (bracket && c == '[')
+				++depth;
+			
+			if (skip && depth > 0)
+				continue;
+			
+			skip = false;
+			if (started) out.append(' ');
+			started = true;
+			
+			if (bracket || (c != '&' && c != 'E'))
+				out.append(list, i, end);
+			else
+				render(out, list.substring(i, end), open, limit);
+		}
 	}
 	
-	// Returns the data on the main gloom stack
+	// Returns the data on the main gloom stack (each value has its references expanded)
 	public Stack<?> stack() {
 		Stack<String> ret = new Stack<>();
-		String rep = expandReferences(main.toString());
-	
-		if (rep.length() > 3)
-			for (String token : rep.substring(2, rep.length() - 2).split(" "))
-				ret.push(token);
+		StringBuilder rep = new StringBuilder();
+		BitSet open = new BitSet();
+		
+		try {
+			for (Object value : main.toArray()) {
+				rep.setLength(0);
+				render(rep, (String)value, open, -1);
+				ret.push(rep.toString());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 		
 		return ret;
 	}
 	
 	// Runs a cmd-line gloom interpreter
-	public static void main(String[] args) {
-		Scanner input = new Scanner(System.in);
-		Interpreter n = new Interpreter();
-		
-		do {
-			n.clear();
-			n.evaluate(input.nextLine());
-			System.out.println("main: " + n.stack());
-			if (n.main.isEmpty()) {
-				n.main.push("1");
+	// Usage: Interpreter [--quiet] [--load snapshot] [--save snapshot] [--quota bytes] [file]
+	// Reads one line of gloom at a time from the file (or stdin if no file is given) and prints the main stack after every line
+	// When --quiet is given, the stack is only printed once all of the input has been evaluated
+	// --load restores a snapshot before any input is read and --save writes one once all of the input has been evaluated
+	// --quota limits the memory (in bytes) the interpreter may hold (see setMemoryQuota)
+	// Output is only flushed after every line when reading from a terminal (otherwise it's flushed when the buffer fills and at the end)
+	public static void main(String[] args) throws IOException {
+		boolean quiet = false;
+		String source = null, load = null, save = null;
+		long quota = 0;
+		
+		for (int i = 0; i < args.length; ++i) {
+			if ("--quiet".equals(args[i]))
+				quiet = true;
+			else if ("--load".equals(args[i]) && i + 1 < args.length)
+				load = args[++i];
+			else if ("--save".equals(args[i]) && i + 1 < args.length)
+				save = args[++i];
+			else if ("--quota".equals(args[i]) && i + 1 < args.length)
+				quota = Long.parseLong(args[++i]);
+			else
+				source = args[i];
+		}
+		
+		ReadableByteChannel channel = source == null ? Channels.newChannel(System.in) : FileChannel.open(Paths.get(source));
+		boolean interactive = source == null && System.console() != null;
+		
+		try (BufferedReader input = new BufferedReader(Channels.newReader(channel, Charset.defaultCharset().newDecoder(), 1 << 16));
+			 BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), 1 << 16)) {
+			Interpreter n = new Interpreter();
+			n.setOutput(output);
+			n.setMemoryQuota(quota);
+			if (load != null) n.loadSnapshot(load);
+			
+			String line;
+			
+			while ((line = input.readLine()) != null) {
+				n.clear();
+				n.evaluate(line);
+				
+				if (!quiet) {
+					output.write("main: ");
+					n.render(output, -1);
+					output.newLine();
+				}
+				
+				if (!n.main.isEmpty() && "exit".equals(n.main.top())) break;
+				if (interactive) output.flush();
 			}
-		} while (!"exit".equals(n.main.top()));
+			
+			if (quiet) {
+				output.write("main: ");
+				n.render(output, -1);
+				output.newLine();
+			}
+			
+			if (save != null) n.saveSnapshot(save);
+		}
 	}
-	
+
 }
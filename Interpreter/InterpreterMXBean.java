@@ -0,0 +1,45 @@
+/**
+ * The management interface of a gloom interpreter. Register an interpreter
+ * with Interpreter.registerMBean to have these values published over JMX.
+ */
+public interface InterpreterMXBean {
+	/**
+	 * @return the number of elements on the main stack
+	 */
+	int getMainDepth();
+	
+	/**
+	 * @return the number of elements on the retain stack
+	 */
+	int getRetainDepth();
+	
+	/**
+	 * @return the number of entries in the reference table
+	 */
+	int getReferenceCount();
+	
+	/**
+	 * @return the number of variables defined in the interpreter
+	 */
+	int getVariableCount();
+	
+	/**
+	 * @return the approximate number of bytes held by the stacks, references and definitions
+	 */
+	long getMemoryUsage();
+	
+	/**
+	 * @return the most memory the interpreter may hold (0 if there is no limit)
+	 */
+	long getMemoryQuota();
+	
+	/**
+	 * @return the number of tokens executed since the interpreter was created
+	 */
+	long getInstructionsExecuted();
+	
+	/**
+	 * @return the number of TokenErrors raised since the interpreter was created
+	 */
+	long getErrorCount();
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
@@ -7,28 +9,42 @@ import java.util.NoSuchElementException;
  */
  
  // is this a representation of the gloom list ???
-public class List<E> {
+public class List<E> implements Iterable<E> {
+	static final int DEFAULT_CAPACITY = 20;
+	
 	E[] data;
 	int top;			// the number of elements in data
 
 	/**
-	 * Constructs a stack with sensible defaults.
+	 * Constructs a list with sensible defaults.
 	 */
-	@SuppressWarnings("unchecked")
 	public List() {
-		data = (E[])(new Object[20]);
-		top = 0;
+		this(DEFAULT_CAPACITY);
 	}
 	
+	/**
+	 * Constructs a list that can hold capacity elements before it resizes.
+	 *
+	 * @param capacity the initial capacity of the list
+	 */
 	@SuppressWarnings("unchecked")
-	private void resize() {
-		E[] tmp = (E[])(new Object[data.length * 2]);
-		
-		for (int i = 0; i < top; ++i) {
-			tmp[i] = data[i];
+	public List(int capacity) {
+		data = (E[])(new Object[java.lang.Math.max(capacity, 1)]);
+		top = 0;
+	}
+	
+	// Makes room for at least 'needed' elements
+	private void ensureCapacity(int needed) {
+		if (needed > data.length) {
+			data = Arrays.copyOf(data, java.lang.Math.max(needed, data.length * 2));
 		}
+	}
 		
-		data = tmp;
+	// Halves the backing array once the list is using less than a quarter of it
+	private void shrink() {
+		if (data.length > DEFAULT_CAPACITY && top < data.length / 4) {
+			data = Arrays.copyOf(data, java.lang.Math.max(data.length / 2, DEFAULT_CAPACITY));
+		}
 	}
 	
 	private void checkBounds(int i) {
@@ -49,11 +65,8 @@ public class List<E> {
 	 * @param e element to be appended to this list
 	 */
 	public void add(E e) {
+		ensureCapacity(top + 1);
 		data[top++] = e;
-		
-		if (top == data.length) {
-			resize();
-		}
 	}
 	
 	/**
@@ -62,28 +75,53 @@ public class List<E> {
 	 * subsequent elements to the right (adds one to their indices).
 	 *
 	 * @throws IndexOutOfBoundsException if the index is out of range 
-	 * [index < 0 || index >= size()]
+	 * [index < 0 || index > size()]
 	 * @param index the index at which the specified element will be added
 	 * @param e element to be inserted
 	 */
 	public void add(int index, E e) {
 		checkBounds(index, true);
+		ensureCapacity(top + 1);
 		
-		if (++top == data.length) {
-			resize();
-		}
-		
-		for (int i = top; i > index; --i) {
-			data[i] = data[i - 1];
-		}
-		
+		System.arraycopy(data, index, data, index + 1, top - index);
 		data[index] = e;
+		++top;
 	}
 	
 	public void append(E e) {
 		add(e);
 	}
 	
+	/**
+	 * Appends every element of the specified list to the end of this list.
+	 *
+	 * @param other the elements to be appended to this list
+	 */
+	public void addAll(List<? extends E> other) {
+		addAll(top, other);
+	}
+	
+	/**
+	 * Inserts every element of the specified list at the specified position in
+	 * this list. Shifts the element currently at that position (if any) and
+	 * any subsequent elements to the right.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * [index < 0 || index > size()]
+	 * @param index the index at which the first element will be added
+	 * @param other the elements to be inserted
+	 */
+	public void addAll(int index, List<? extends E> other) {
+		checkBounds(index, true);
+		
+		int n = other.top;
+		ensureCapacity(top + n);
+		
+		System.arraycopy(data, index, data, index + n, top - index);
+		System.arraycopy(other.data, 0, data, index, n);
+		top += n;
+	}
+	
 	/**
 	 * Returns the element at the specified position in this list.
 	 *
@@ -112,13 +150,27 @@ public class List<E> {
 		checkBounds(index);
 		
 		E tmp = data[index];
+		removeRange(index, index + 1);
+		return tmp;
+	}
 		
-		for (int i = index; i < top + 1; ++i) {
-			data[i] = data[i + 1];
+	/**
+	 * Removes the elements in [from, to). Shifts any subsequent elements to
+	 * the left.
+	 *
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @param from the index of the first element to be removed
+	 * @param to the index after the last element to be removed
+	 */
+	public void removeRange(int from, int to) {
+		if (from < 0 || to > top || from > to) {
+			throw new IndexOutOfBoundsException();
 		}
 		
-		data[top--] = null;
-		return tmp;
+		System.arraycopy(data, to, data, from, top - to);
+		Arrays.fill(data, top - (to - from), top, null);
+		top -= to - from;
+		shrink();
 	}
 	
 	/**
@@ -129,7 +181,6 @@ public class List<E> {
 	 * [index < 0 || index >= size()]
 	 * @param index index of the element to replace
 	 * @param e element to be stored at the specified position
-	 * @return the element previously at the specified position
 	 */
 	public void set(int index, E e) {
 		checkBounds(index);
@@ -142,8 +193,17 @@ public class List<E> {
 	 * this call returns.
 	 */
 	public void clear() {
-		for (int i = 0; i < top; ++i) {
-			data[i] = null;
+		Arrays.fill(data, 0, top, null);
+		top = 0;
+		shrink();
+	}
+	
+	/**
+	 * Shrinks the backing array to the size of this list.
+	 */
+	public void trimToSize() {
+		if (top < data.length) {
+			data = Arrays.copyOf(data, java.lang.Math.max(top, 1));
 		}
 	}
 	
@@ -170,6 +230,41 @@ public class List<E> {
 		return data;
 	}
 
+	/**
+	 * Returns an array holding the elements of this list. The runtime type of
+	 * the returned array is that of the given array.
+	 *
+	 * @param a an array of the desired type
+	 * @return an array holding the elements of this list
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a) {
+		return (T[])Arrays.copyOf(data, top, a.getClass());
+	}
+	
+	/**
+	 * Returns an iterator over the elements in this list, from front to back.
+	 *
+	 * @return an iterator over the elements in this list
+	 */
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private int i = 0;
+			
+			public boolean hasNext() {
+				return i < top;
+			}
+			
+			public E next() {
+				if (i >= top) {
+					throw new NoSuchElementException();
+				}
+				
+				return data[i++];
+			}
+		};
+	}
+	
 	/**
 	 * Generates a string represtentation of this list. The list is represented 
 	 * by an opening square bracket, followed by a space delineated list of 
@@ -182,12 +277,12 @@ public class List<E> {
 	 * @return the string representation of this list.
 	 */
 	public String toString() {
-		String ret = "[ ";
+		StringBuilder ret = new StringBuilder("[ ");
 		
 		for (int i = 0; i < top; ++i) {
-			ret = ret + data[i] + " ";
+			ret.append(data[i]).append(' ');
 		}
 		
-		return ret + "]";
+		return ret.append(']').toString();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// Flight recorder event emitted by 'loop' and 'rep' when they run longer than the threshold
+@Name("gloom.Loop")
+@Label("Gloom Loop")
+@Category("Gloom")
+@Threshold("20 ms")
+class LoopEvent extends Event {
+	@Label("Token")
+	String token;
+	
+	@Label("Iterations")
+	long iterations;
+}
@@ -0,0 +1,33 @@
+// This defines a further abstract class to define binary mathematical operators
+// This class removes the process of testing type correctness from children classes
+abstract class Math extends TokenBase {
+	public Math(String token, int needs) {
+		super(token, needs);
+	}
+	
+	abstract int op(int left, int right);						// The operation on integers. Quickened call sites (see CompiledWord) call this directly
+	abstract boolean definedFor(String type, boolean lhs);						
+	
+	String op(String left, String right) {
+		return Integer.toString(op(toInt(left), toInt(right)));
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		if (definedFor(type(main.top()), true)) {
+			String right = main.pop();
+			
+			if (definedFor(type(main.top()), false)) {
+				main.push(op(main.pop(), right));
+				return;
+			}
+		}
+		
+		throw notDefined(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+}
@@ -0,0 +1,170 @@
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The result cache of a memoized word (see the memo token). The top 'arity'
+ * elements of the stack are the word's input, and the whole stack that the
+ * word leaves when it's run on just those elements is its output. Calls
+ * whose input is cached push the output without running the word.
+ *
+ * Only words that are pure (see TokenBase.isPure) are memoized. Purity is
+ * checked again (and the cache cleared) whenever the definitions change, so
+ * forks that haven't made any definitions of their own share the cache, and
+ * calls involving lists are never cached as the lists may be modified.
+ * Each word's cache holds at most 'capacity' results, the least recently
+ * used result is dropped first.
+ */
+public class Memo {
+	private final Variable word;
+	private final int arity;
+	private final Map<String, String[]> results;		// Input (joined by spaces) -> output (bottom to top)
+	private Object stamp;								// The bindings purity was last checked against (see Environment.stamp)
+	private boolean pure;
+	private long hits;
+	private long misses;
+	
+	/**
+	 * Constructs an empty cache for the word.
+	 *
+	 * @param word the memoized word
+	 * @param arity the number of stack elements the word reads
+	 * @param capacity the maximum number of cached results
+	 */
+	public Memo(Variable word, int arity, int capacity) {
+		this.word = word;
+		this.arity = arity;
+		results = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Runs a call to the word through the cache. Calls that can't be cached
+	 * (the word isn't pure, the input holds a list, ...) are left to the
+	 * caller.
+	 *
+	 * @param gloom the interpreter calling the word
+	 * @param main the interpreter's main stack
+	 * @return false if the word still needs to be run (the stack is unchanged)
+	 */
+	boolean run(Interpreter gloom, Stack<String> main) {
+		if (main.size() < arity || !isPure(gloom)) return false;
+		
+		String[] in = new String[arity];
+		StringBuilder key = new StringBuilder();
+		
+		for (int i = arity - 1; i >= 0; --i)
+			in[i] = main.pop();
+		
+		for (String value : in) {
+			if (value.indexOf(' ') >= 0 || TokenBase.isReference(value)) {
+				for (String v : in) main.push(v);
+				return false;
+			}
+			
+			key.append(value).append(' ');
+		}
+		
+		String[] out = get(key.toString());
+		
+		if (out == null) {
+			out = gloom.runIsolated(word, in);
+			
+			if (out == null) {									// The word raised an error, so the call is run normally
+				for (String v : in) main.push(v);
+				return false;
+			}
+			
+			if (cacheable(out)) put(key.toString(), out);
+		}
+		
+		for (String value : out)
+			main.push(value);
+		
+		return true;
+	}
+	
+	// Checks (and caches) whether the word is pure under the interpreter's current definitions
+	private synchronized boolean isPure(Interpreter gloom) {
+		Object current = gloom.environment().stamp();
+		
+		if (current != stamp) {								// Forks share the stamp until one of them makes a definition
+			stamp = current;
+			pure = word.isPure(gloom, new HashSet<>());
+			results.clear();
+		}
+		
+		return pure;
+	}
+	
+	private synchronized String[] get(String key) {
+		String[] ret = results.get(key);
+		
+		if (ret != null)
+			++hits;
+		else
+			++misses;
+		
+		return ret;
+	}
+	
+	private synchronized void put(String key, String[] out) {
+		results.put(key, out);
+	}
+	
+	// Lists in the output may be modified, so those results aren't kept
+	private static boolean cacheable(String[] out) {
+		for (String value : out)
+			if (value.indexOf(' ') >= 0 || TokenBase.isReference(value)) return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the number of calls answered from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of cacheable calls that had to run the word.
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the approximate number of bytes held by the cache.
+	 *
+	 * @return the approximate size of the cache in bytes
+	 */
+	public synchronized long footprint() {
+		long ret = 64;
+		
+		for (Map.Entry<String, String[]> e : results.entrySet()) {
+			ret += 96 + e.getKey().length();
+			
+			for (String value : e.getValue())
+				ret += 48 + value.length();
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return the number of cached results
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+}
\ No newline at end of file
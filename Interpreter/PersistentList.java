@@ -0,0 +1,242 @@
+/**
+ * An immutable list that shares structure between versions. The elements are
+ * kept in a height balanced (AVL) tree ordered by position, so a modified
+ * version only copies the O(log n) nodes on the path to the change. This
+ * makes copying a list free and get, set, insert, remove and append O(log n).
+ */
+final class PersistentList extends Sequence {
+	private static final class Node {
+		final Node left, right;
+		final String val;
+		final int size;
+		final int height;
+		
+		Node(Node left, String val, Node right) {
+			this.left = left;
+			this.val = val;
+			this.right = right;
+			size = size(left) + size(right) + 1;
+			height = java.lang.Math.max(height(left), height(right)) + 1;
+		}
+	}
+	
+	public static final PersistentList EMPTY = new PersistentList(null);
+	
+	private final Node root;
+	
+	private PersistentList(Node root) {
+		this.root = root;
+	}
+	
+	/**
+	 * Creates a list holding the elements of the given sequence.
+	 *
+	 * @param seq the elements of the list
+	 * @return the list
+	 */
+	public static PersistentList of(Sequence seq) {
+		if (seq instanceof PersistentList) return (PersistentList)seq;
+		
+		String[] vals = new String[seq.size()];
+		for (int i = 0; i < vals.length; ++i) vals[i] = seq.get(i);
+		
+		return new PersistentList(build(vals, 0, vals.length));
+	}
+	
+	int size() {
+		return size(root);
+	}
+	
+	long footprint() {
+		return 80L * size();								// A node and its element
+	}
+	
+	String get(int index) {
+		checkBounds(index, size());
+		Node n = root;
+		
+		while (true) {
+			int left = size(n.left);
+			
+			if (index == left) return n.val;
+			
+			if (index < left)
+				n = n.left;
+			else {
+				index -= left + 1;
+				n = n.right;
+			}
+		}
+	}
+	
+	/**
+	 * Returns a list with the element at the specified position replaced.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * @param index the index of the element to replace
+	 * @param val the new element
+	 * @return the modified list
+	 */
+	public PersistentList set(int index, String val) {
+		checkBounds(index, size());
+		return new PersistentList(set(root, index, val));
+	}
+	
+	/**
+	 * Returns a list with the element inserted at the specified position.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range [0, size()]
+	 * @param index the index the element will have
+	 * @param val the element to insert
+	 * @return the modified list
+	 */
+	public PersistentList insert(int index, String val) {
+		checkBounds(index, size() + 1);
+		return new PersistentList(insert(root, index, val));
+	}
+	
+	/**
+	 * Returns a list with the element at the specified position removed.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * @param index the index of the element to remove
+	 * @return the modified list
+	 */
+	public PersistentList remove(int index) {
+		checkBounds(index, size());
+		return new PersistentList(remove(root, index));
+	}
+	
+	/**
+	 * Returns the list holding the elements of this list followed by those of
+	 * the other list.
+	 *
+	 * @param other the list to append
+	 * @return the combined list
+	 */
+	public PersistentList append(PersistentList other) {
+		if (other.root == null) return this;
+		if (root == null) return other;
+		
+		Node[] last = new Node[1];
+		Node rest = removeLast(root, last);
+		return new PersistentList(join(rest, last[0].val, other.root));
+	}
+	
+	boolean hasReferences() {
+		return hasReferences(root);
+	}
+	
+	public String toString() {
+		StringBuilder ret = new StringBuilder("[ ");
+		append(ret, root);
+		return ret.append(']').toString();
+	}
+	
+	/*
+	*  Tree operations (nodes are never modified)
+	*/
+	
+	private static int size(Node n) {
+		return n == null ? 0 : n.size;
+	}
+	
+	private static int height(Node n) {
+		return n == null ? 0 : n.height;
+	}
+	
+	private static void checkBounds(int index, int size) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException();
+	}
+	
+	private static Node build(String[] vals, int from, int to) {
+		if (from >= to) return null;
+		
+		int mid = (from + to) >>> 1;
+		return new Node(build(vals, from, mid), vals[mid], build(vals, mid + 1, to));
+	}
+	
+	// Creates the node, rotating if the subtrees' heights differ by two
+	private static Node balance(Node l, String v, Node r) {
+		if (height(l) > height(r) + 1) {
+			if (height(l.left) >= height(l.right))
+				return new Node(l.left, l.val, new Node(l.right, v, r));
+			
+			return new Node(new Node(l.left, l.val, l.right.left), l.right.val, new Node(l.right.right, v, r));
+		}
+		
+		if (height(r) > height(l) + 1) {
+			if (height(r.right) >= height(r.left))
+				return new Node(new Node(l, v, r.left), r.val, r.right);
+			
+			return new Node(new Node(l, v, r.left.left), r.left.val, new Node(r.left.right, r.val, r.right));
+		}
+		
+		return new Node(l, v, r);
+	}
+	
+	// Joins two trees of any height around v
+	private static Node join(Node l, String v, Node r) {
+		if (height(l) > height(r) + 1)
+			return balance(l.left, l.val, join(l.right, v, r));
+		
+		if (height(r) > height(l) + 1)
+			return balance(join(l, v, r.left), r.val, r.right);
+		
+		return new Node(l, v, r);
+	}
+	
+	private static Node set(Node n, int index, String val) {
+		int left = size(n.left);
+		
+		if (index < left) return new Node(set(n.left, index, val), n.val, n.right);
+		if (index > left) return new Node(n.left, n.val, set(n.right, index - left - 1, val));
+		
+		return new Node(n.left, val, n.right);
+	}
+	
+	private static Node insert(Node n, int index, String val) {
+		if (n == null) return new Node(null, val, null);
+		
+		int left = size(n.left);
+		
+		if (index <= left) return balance(insert(n.left, index, val), n.val, n.right);
+		
+		return balance(n.left, n.val, insert(n.right, index - left - 1, val));
+	}
+	
+	private static Node remove(Node n, int index) {
+		int left = size(n.left);
+		
+		if (index < left) return balance(remove(n.left, index), n.val, n.right);
+		if (index > left) return balance(n.left, n.val, remove(n.right, index - left - 1));
+		if (n.left == null) return n.right;
+		
+		Node[] last = new Node[1];
+		Node rest = removeLast(n.left, last);
+		return balance(rest, last[0].val, n.right);
+	}
+	
+	// Removes the last node of the tree, storing it in last[0]
+	private static Node removeLast(Node n, Node[] last) {
+		if (n.right == null) {
+			last[0] = n;
+			return n.left;
+		}
+		
+		return balance(n.left, n.val, removeLast(n.right, last));
+	}
+	
+	private static boolean hasReferences(Node n) {
+		return n != null && (TokenBase.isReference(n.val) || hasReferences(n.left) || hasReferences(n.right));
+	}
+	
+	private static void append(StringBuilder out, Node n) {
+		if (n == null) return;
+		
+		append(out, n.left);
+		out.append(n.val).append(' ');
+		append(out, n.right);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-word execution counters for a gloom interpreter. Every dispatch made by
+ * Interpreter.call is counted and timed (cumulative nanoseconds, so callees
+ * are included in the time of their callers) and recorded in a call tree,
+ * from which a flame-graph compatible collapsed-stack file can be written.
+ *
+ * An optional sampler thread periodically marks the frame that is currently
+ * executing. Sample counts are cheaper to interpret than the instrumented
+ * times for deeply recursive words.
+ */
+public class Profiler {
+	// A node in the call tree
+	private static class Frame {
+		final int id;
+		final Frame parent;
+		Frame[] children = new Frame[0];
+		long start;
+		long nanos;
+		long calls;
+		long samples;
+
+		Frame(int id, Frame parent) {
+			this.id = id;
+			this.parent = parent;
+		}
+
+		Frame child(int id) {
+			for (Frame f : children)
+				if (f.id == id) return f;
+
+			Frame f = new Frame(id, this);
+			children = Arrays.copyOf(children, children.length + 1);
+			children[children.length - 1] = f;
+			return f;
+		}
+	}
+
+	private long[] calls = new long[64];			// Invocations, indexed by symbol id
+	private long[] nanos = new long[64];			// Cumulative time, indexed by symbol id
+	private final Frame root = new Frame(Symbols.NONE, null);
+	private volatile Frame current = root;
+	private Thread sampler;
+
+	/**
+	 * Constructs a profiler that only counts and times calls.
+	 */
+	public Profiler() {
+	}
+
+	/**
+	 * Constructs a profiler that additionally samples the executing frame.
+	 *
+	 * @param interval the number of microseconds between samples
+	 */
+	public Profiler(long interval) {
+		if (interval > 0) {
+			sampler = new Thread(() -> {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						Thread.sleep(interval / 1000, (int)(interval % 1000) * 1000);
+						++current.samples;
+					}
+				} catch (InterruptedException e) {
+				}
+			}, "gloom-profiler");
+
+			sampler.setDaemon(true);
+			sampler.start();
+		}
+	}
+
+	/**
+	 * Records the start of a call to the token with the given symbol id.
+	 *
+	 * @param id the symbol id of the called token
+	 */
+	public void enter(int id) {
+		if (id >= calls.length) {
+			calls = Arrays.copyOf(calls, java.lang.Math.max(id + 1, calls.length * 2));
+			nanos = Arrays.copyOf(nanos, calls.length);
+		}
+
+		++calls[id];
+
+		Frame f = current.child(id);
+		++f.calls;
+		current = f;
+		f.start = System.nanoTime();
+	}
+
+	/**
+	 * Records the end of the innermost call.
+	 */
+	public void exit() {
+		Frame f = current;
+		if (f == root) return;
+
+		long time = System.nanoTime() - f.start;
+		f.nanos += time;
+		nanos[f.id] += time;
+		current = f.parent;
+	}
+
+	/**
+	 * Stops the sampler thread (if any). The collected data remains available.
+	 */
+	public void stop() {
+		if (sampler != null)
+			sampler.interrupt();
+	}
+
+	/**
+	 * Returns the number of times the token with the given symbol id was called.
+	 *
+	 * @param id the symbol id of the token
+	 * @return the number of calls
+	 */
+	public long calls(int id) {
+		return id < calls.length ? calls[id] : 0;
+	}
+
+	/**
+	 * Returns the cumulative time spent in the token with the given symbol id.
+	 *
+	 * @param id the symbol id of the token
+	 * @return the number of nanoseconds spent in the token
+	 */
+	public long nanos(int id) {
+		return id < nanos.length ? nanos[id] : 0;
+	}
+
+	/**
+	 * Writes a table of every called token, sorted by cumulative time.
+	 *
+	 * @param out where to write the report
+	 * @throws IOException if out fails
+	 */
+	public void report(Appendable out) throws IOException {
+		Integer[] ids = new Integer[calls.length];
+		int n = 0;
+
+		for (int i = 0; i < calls.length; ++i)
+			if (calls[i] > 0) ids[n++] = i;
+
+		Arrays.sort(ids, 0, n, (a, b) -> Long.compare(nanos[b], nanos[a]));
+
+		out.append(String.format("%-20s %12s %14s %12s%n", "token", "calls", "total (us)", "avg (ns)"));
+
+		for (int i = 0; i < n; ++i) {
+			int id = ids[i];
+			out.append(String.format("%-20s %12d %14d %12d%n", Symbols.name(id), calls[id], nanos[id] / 1000, nanos[id] / calls[id]));
+		}
+	}
+
+	/**
+	 * Returns true if the executing frame is being sampled.
+	 *
+	 * @return if the profiler was constructed with a sampling interval
+	 */
+	public boolean isSampling() {
+		return sampler != null;
+	}
+
+	/**
+	 * Writes the call tree in the collapsed-stack format understood by
+	 * flamegraph.pl and similar tools ("outer;inner;innermost value" per line).
+	 *
+	 * @param out where to write the stacks
+	 * @param samples if true the value is the sample count, otherwise the self time in microseconds
+	 * @throws IOException if out fails
+	 */
+	public void collapsed(Appendable out, boolean samples) throws IOException {
+		StringBuilder path = new StringBuilder();
+
+		for (Frame f : root.children)
+			collapsed(out, f, path, samples);
+	}
+
+	private void collapsed(Appendable out, Frame f, StringBuilder path, boolean samples) throws IOException {
+		int len = path.length();
+		if (len > 0) path.append(';');
+		path.append(Symbols.name(f.id));
+
+		long value = f.samples;
+
+		if (!samples) {
+			value = f.nanos;
+
+			for (Frame c : f.children)
+				value -= c.nanos;
+
+			value /= 1000;
+		}
+
+		if (value > 0)
+			out.append(path).append(' ').append(Long.toString(value)).append('\n');
+
+		for (Frame c : f.children)
+			collapsed(out, c, path, samples);
+
+		path.setLength(len);
+	}
+}
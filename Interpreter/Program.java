@@ -0,0 +1,35 @@
+/**
+ * A block of gloom code that has been parsed and had its names resolved to
+ * symbol ids. A program can be run any number of times (and by several
+ * interpreters at once) without being parsed again.
+ *
+ * @see Interpreter#compileProgram
+ * @see Interpreter#runBatch
+ */
+public class Program {
+	final List<String> code;
+	final int[] ids;
+	
+	Program(List<String> code, int[] ids) {
+		this.code = code;
+		this.ids = ids;
+	}
+	
+	/**
+	 * Returns the number of tokens in the program.
+	 *
+	 * @return the number of tokens in the program
+	 */
+	public int size() {
+		return code.size();
+	}
+	
+	/**
+	 * Generates the parsed representation of the program (eg. "[ 5 &1 rep ]").
+	 *
+	 * @return the string representation of the program
+	 */
+	public String toString() {
+		return code.toString();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+// Raised when an interpreter holds more memory than its quota allows (see Interpreter.setMemoryQuota)
+// Unlike other TokenErrors, this isn't turned into a value by the token that raised it. It stops the whole evaluation
+class QuotaError extends TokenError {
+	private static final long serialVersionUID = 1L;
+	
+	public QuotaError(String format, Object... args) {
+		super(format, args);
+	}
+}
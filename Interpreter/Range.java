@@ -0,0 +1,56 @@
+// The integers start, start + step, ... (size of them). Only the bounds are stored
+class Range extends Sequence {
+	private final int start;
+	private final int step;
+	private final int size;
+	
+	public Range(int start, int step, int size) {
+		this.start = start;
+		this.step = step;
+		this.size = java.lang.Math.max(size, 0);
+	}
+	
+	int start() {
+		return start;
+	}
+	
+	int step() {
+		return step;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	String get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException();
+		
+		return Integer.toString(start + index * step);
+	}
+	
+	// Modified ranges are stored as an IntSequence (see IntSequence.set)
+	Sequence set(int index, String val) {
+		return size > IntSequence.MAX_COPY ? super.set(index, val) : IntSequence.of(this).set(index, val);
+	}
+	
+	Sequence insert(int index, String val) {
+		return size > IntSequence.MAX_COPY ? super.insert(index, val) : IntSequence.of(this).insert(index, val);
+	}
+	
+	Sequence remove(int index) {
+		return size > IntSequence.MAX_COPY ? super.remove(index) : IntSequence.of(this).remove(index);
+	}
+	
+	boolean hasReferences() {
+		return false;
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+	
+	long footprint() {
+		return 32;
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * A read-only view of a gloom list. Lazy lists (eg. ranges) are stored in the
+ * reference table as a Sequence and are only turned into a list string when
+ * they are mutated or printed. The list words (get, size, map, ...) read
+ * every list through this interface, so they never need to materialize one.
+ */
+abstract class Sequence {
+	/**
+	 * Returns the number of elements in the sequence.
+	 *
+	 * @return the number of elements in the sequence
+	 */
+	abstract int size();
+	
+	/**
+	 * Returns the element at the specified position in the sequence.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * @param index the index of the element to return
+	 * @return the element at the specified position
+	 */
+	abstract String get(int index);
+	
+	/**
+	 * Returns true if any element may be a reference. Code reached through
+	 * a reference can't be checked before it is run.
+	 *
+	 * @return if any element may be a reference
+	 */
+	boolean hasReferences() {
+		for (int i = 0; i < size(); ++i)
+			if (TokenBase.isReference(get(i))) return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Returns a list with the element at the specified position replaced.
+	 * Lists are converted to a PersistentList unless they have a more compact
+	 * form that can hold the result (see IntSequence).
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * @param index the index of the element to replace
+	 * @param val the new element
+	 * @return the modified list
+	 */
+	Sequence set(int index, String val) {
+		return PersistentList.of(this).set(index, val);
+	}
+	
+	/**
+	 * Returns a list with the element inserted at the specified position.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range [0, size()]
+	 * @param index the index the element will have
+	 * @param val the element to insert
+	 * @return the modified list
+	 */
+	Sequence insert(int index, String val) {
+		return PersistentList.of(this).insert(index, val);
+	}
+	
+	/**
+	 * Returns a list with the element at the specified position removed.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 * @param index the index of the element to remove
+	 * @return the modified list
+	 */
+	Sequence remove(int index) {
+		return PersistentList.of(this).remove(index);
+	}
+	
+	/**
+	 * Returns true if every element can be run by a worker (see
+	 * Interpreter.isPure).
+	 *
+	 * @param gloom the interpreter the elements would be run by
+	 * @param visited the references that have already been checked
+	 * @return if every element is pure
+	 */
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		for (int i = 0; i < size(); ++i)
+			if (!gloom.isPure(get(i), visited)) return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the approximate number of bytes held by the sequence (see
+	 * Interpreter.memoryUsage). This must not read the elements.
+	 *
+	 * @return the approximate size of the sequence in bytes
+	 */
+	long footprint() {
+		return 48L * size();
+	}
+	
+	/**
+	 * Wraps the elements of a list string.
+	 *
+	 * @param elements the elements of the list
+	 * @return a sequence over the elements
+	 */
+	static Sequence of(String[] elements) {
+		return new Sequence() {
+			int size() {
+				return elements.length;
+			}
+			
+			String get(int index) {
+				return elements[index];
+			}
+		};
+	}
+	
+	/**
+	 * Generates the gloom list string holding the elements of the sequence
+	 * (eg. "[ 0 1 2 ]").
+	 *
+	 * @return the list string
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder("[ ");
+		
+		for (int i = 0; i < size(); ++i)
+			ret.append(get(i)).append(' ');
+		
+		return ret.append(']').toString();
+	}
+}
@@ -0,0 +1,259 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary image of an interpreter's state (its definitions, references and
+ * both stacks). A snapshot lets a warmed up environment be restored without
+ * evaluating its prelude again.
+ *
+ * The file is a header (magic, version) followed by the definitions (name,
+ * needs, body), the main and retain stacks (bottom to top) and the reference
+ * table. Ranges are stored by their bounds, integer lists as an array of
+ * ints, maps by their entries (key, value), the lines of a file by the file's
+ * path and every other list by its list string. Strings are stored as a length followed by their UTF-8 bytes.
+ *
+ * Snapshots are read through a memory mapped buffer. Only the lengths of the
+ * saved lists are read when the snapshot is loaded, each list is decoded the
+ * first time it is used.
+ */
+public class Snapshot {
+	static final int MAGIC = 0x474c4d53;			// "GLMS"
+	static final int VERSION = 4;					// Each version only added entry kinds, so every earlier version can still be read
+	
+	private static final byte LIST = 0;				// Reference entry kinds
+	private static final byte RANGE = 1;
+	private static final byte MAP = 2;
+	private static final byte INTS = 3;
+	private static final byte LINES = 4;
+	
+	final List<Variable> variables = new List<>();
+	final List<String> main = new List<>();
+	final List<String> retain = new List<>();
+	final List<Object> refs = new List<>();
+	
+	private Snapshot() {
+	}
+	
+	/**
+	 * Writes the given interpreter state to the file, replacing it if it
+	 * exists. Definitions that aren't gloom variables are not saved.
+	 *
+	 * @param file where to write the snapshot
+	 * @param variables the interpreter's definitions (null entries are skipped)
+	 * @param main the main stack
+	 * @param retain the retain stack
+	 * @param refs the reference table
+	 * @throws IOException if the file can't be written
+	 */
+	static void write(Path file, TokenBase[] variables, Stack<String> main, Stack<String> retain, List<Object> refs) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			
+			int count = 0;
+			for (TokenBase var : variables)
+				if (var instanceof Variable) ++count;
+			
+			out.writeInt(count);
+			for (TokenBase var : variables) {
+				if (var instanceof Variable) {
+					writeString(out, var.getToken());
+					out.writeInt(var.getNeeds());
+					writeString(out, ((Variable)var).getBody());
+				}
+			}
+			
+			writeStack(out, main);
+			writeStack(out, retain);
+			
+			out.writeInt(refs.size());
+			for (Object list : refs) {
+				if (list instanceof Range) {
+					Range range = (Range)list;
+					out.writeByte(RANGE);
+					out.writeInt(range.start());
+					out.writeInt(range.step());
+					out.writeInt(range.size());
+				
+				} else if (list instanceof IntSequence) {
+					IntSequence ints = (IntSequence)list;
+					out.writeByte(INTS);
+					out.writeInt(ints.size());
+					
+					for (int i = 0; i < ints.size(); ++i)
+						out.writeInt(ints.getInt(i));
+				
+				} else if (list instanceof FileLines) {
+					out.writeByte(LINES);
+					writeString(out, ((FileLines)list).path().toString());
+				
+				} else if (list == null || list instanceof Channel || list instanceof Task) {
+					out.writeByte(LIST);
+					writeString(out, "[ ]");							// Channels and tasks only exist while the process is running (and reclaimed slots are empty)
+				
+				} else if (list instanceof Dict) {
+					Dict map = (Dict)list;
+					out.writeByte(MAP);
+					out.writeInt(map.size());
+					
+					for (java.util.Map.Entry<String, String> e : map.entries()) {
+						writeString(out, e.getKey());
+						writeString(out, e.getValue());
+					}
+				
+				} else {
+					out.writeByte(LIST);
+					writeString(out, list.toString());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a snapshot written by write.
+	 *
+	 * @throws IOException if the file can't be read or isn't a snapshot
+	 * @param file the snapshot to read
+	 * @return the saved state
+	 */
+	static Snapshot read(Path file) throws IOException {
+		MappedByteBuffer in;
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		
+		Snapshot ret = new Snapshot();
+		
+		try {
+			if (in.getInt() != MAGIC) throw new IOException(file + " is not a gloom snapshot");
+			int version = in.getInt();
+			if (version < 1 || version > VERSION) throw new IOException(file + " was written by an incompatible version");
+			
+			for (int i = in.getInt(); i > 0; --i) {
+				String name = readString(in);
+				int needs = in.getInt();
+				ret.variables.add(new Variable(readString(in), name, needs));
+			}
+			
+			readStack(in, ret.main);
+			readStack(in, ret.retain);
+			
+			for (int i = in.getInt(); i > 0; --i) {
+				byte kind = in.get();
+				
+				if (kind == RANGE) {
+					ret.refs.add(new Range(in.getInt(), in.getInt(), in.getInt()));
+				
+				} else if (kind == INTS) {
+					int[] values = new int[in.getInt()];
+					in.asIntBuffer().get(values);
+					in.position(in.position() + 4 * values.length);
+					ret.refs.add(new IntSequence(values));
+				
+				} else if (kind == LINES) {
+					ret.refs.add(new FileLines(Path.of(readString(in))));
+				
+				} else if (kind == MAP) {
+					Dict map = new Dict(ret.refs);
+					
+					for (int j = in.getInt(); j > 0; --j)
+						map.put(readString(in), readString(in));
+					
+					ret.refs.add(map);
+				
+				} else {
+					int length = in.getInt();
+					ret.refs.add(new MappedList(in.slice(in.position(), length)));
+					in.position(in.position() + length);
+				}
+			}
+		} catch (RuntimeException e) {							// Thrown by the buffer if the file is truncated
+			throw new IOException(file + " is not a valid gloom snapshot", e);
+		}
+		
+		return ret;
+	}
+	
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		String ret = StandardCharsets.UTF_8.decode(in.slice(in.position(), length)).toString();
+		in.position(in.position() + length);
+		return ret;
+	}
+	
+	private static void writeStack(DataOutputStream out, Stack<String> stack) throws IOException {
+		Object[] values = stack.toArray();
+		out.writeInt(values.length);
+		
+		for (Object value : values)
+			writeString(out, (String)value);
+	}
+	
+	private static void readStack(ByteBuffer in, List<String> stack) {
+		for (int i = in.getInt(); i > 0; --i)
+			stack.add(readString(in));
+	}
+}
+
+// A saved list that is decoded from the snapshot the first time it's used
+class MappedList extends Sequence {
+	private ByteBuffer bytes;						// The list string's bytes (dropped once decoded)
+	private volatile String list;
+	private volatile String[] elements;
+	
+	public MappedList(ByteBuffer bytes) {
+		this.bytes = bytes;
+	}
+	
+	private synchronized String list() {
+		if (list == null) {
+			list = StandardCharsets.UTF_8.decode(bytes).toString();
+			bytes = null;
+		}
+		
+		return list;
+	}
+	
+	private String[] elements() {
+		String[] ret = elements;
+		
+		if (ret == null)
+			elements = ret = TokenBase.elements(list != null ? list : list());
+		
+		return ret;
+	}
+	
+	int size() {
+		return elements().length;
+	}
+	
+	String get(int index) {
+		return elements()[index];
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return gloom.isPure(list != null ? list : list(), visited);		// Checks the text rather than splitting it into elements that would be kept
+	}
+	
+	long footprint() {
+		String[] decoded = elements;
+		return list == null ? 64 : 40 + 2L * list.length() + (decoded != null ? 48L * decoded.length : 0);		// The mapped bytes aren't on the heap
+	}
+	
+	public String toString() {
+		return list != null ? list : list();
+	}
+}
\ No newline at end of file
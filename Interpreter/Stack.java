@@ -26,16 +26,37 @@ public class Stack<E> {
 		}
 		
 		public void clear() {
-			if (nextNode != null) {
-				nextNode.clear();
-			}
-		
+			Node node = nextNode;
 			nextNode = null;
+			
+			while (node != null) {				// Iterative so that clearing a large stack can't overflow the call stack
+				Node next = node.nextNode;
+				node.nextNode = null;
+				node = next;
+			}
 		}
 		
 		public String toString() {
 			//return val + " " + (nextNode != null ? nextNode : "");
-			return (nextNode != null ? nextNode.toString() : "") + val + " ";
+			int n = 0;
+			
+			for (Node node = this; node != null; node = node.nextNode) {
+				++n;
+			}
+			
+			Object[] vals = new Object[n];
+			
+			for (Node node = this; node != null; node = node.nextNode) {
+				vals[--n] = node.val;
+			}
+			
+			StringBuilder ret = new StringBuilder();
+			
+			for (Object v : vals) {
+				ret.append(v).append(' ');
+			}
+			
+			return ret.toString();
 		}
 	}
 
@@ -124,6 +145,39 @@ public class Stack<E> {
 		return stackSize == 0;
 	}
 	
+	/**
+	 * Returns the approximate number of bytes held by this stack.
+	 *
+	 * @param element the number of bytes held by an element
+	 * @return the approximate size of this stack in bytes
+	 */
+	public long footprint(java.util.function.ToLongFunction<? super E> element) {
+		long ret = 16;
+		
+		for (Node node = top; node != null; node = node.next()) {
+			ret += 24 + element.applyAsLong(node.value());
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Returns an array containing every element in this stack, ordered from
+	 * the bottom of the stack to the top.
+	 *
+	 * @return the elements of this stack
+	 */
+	public Object[] toArray() {
+		Object[] ret = new Object[stackSize];
+		int i = stackSize;
+		
+		for (Node node = top; node != null; node = node.next()) {
+			ret[--i] = node.value();
+		}
+		
+		return ret;
+	}
+	
 	/**
 	 * Generates a string represtentation of this stack. The stack is
 	 * represented by an opening square bracket, followed by a space delineated
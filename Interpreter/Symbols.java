@@ -0,0 +1,122 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The system wide symbol table. Every name that the interpreter may need to
+ * resolve is interned to a small integer id, so that variable and literal
+ * lookup is an array index and repeated tokens share a single String.
+ *
+ * Numbers, references and named arguments are data rather than names and are
+ * never given an id (otherwise every intermediate value would grow the table).
+ * The table never shrinks, so only names that are bound to something (tokens,
+ * variables and let bindings) are interned. Code that is compiled before a
+ * name is bound gives it UNBOUND (see find), so string literals and error
+ * values never get an id.
+ */
+public class Symbols {
+	public static final int NONE = -1;						// The id given to tokens that are not names
+	public static final int UNBOUND = -2;					// The id given to names that weren't interned when they were compiled (they must be looked up when they're reached)
+
+	private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private static volatile String[] names = new String[64];
+	private static int count = 0;
+
+	/**
+	 * Returns the id of the given name, adding it to the table if it was not
+	 * already present.
+	 *
+	 * @param name the name to intern
+	 * @return the id of the name
+	 */
+	public static int intern(String name) {
+		Integer id = ids.get(name);
+
+		if (id != null)
+			return id;
+
+		synchronized (ids) {
+			id = ids.get(name);
+			if (id != null) return id;
+
+			if (count == names.length)
+				names = Arrays.copyOf(names, count * 2);
+
+			names[count] = name;
+			ids.put(name, count);
+			return count++;
+		}
+	}
+
+	/**
+	 * Returns the id of the given name or NONE if the name was never interned.
+	 *
+	 * @param name the name to look up
+	 * @return the id of the name
+	 */
+	public static int lookup(String name) {
+		Integer id = ids.get(name);
+		return id != null ? id : NONE;
+	}
+
+	/**
+	 * Returns the id to compile the token to: its id if it's an interned
+	 * name, UNBOUND if it's a name that hasn't been interned (yet) or NONE if
+	 * it isn't a name. Unlike intern, this never adds to the table.
+	 *
+	 * @param token the token to look up
+	 * @return the id of the token, UNBOUND or NONE
+	 */
+	public static int find(String token) {
+		if (!isName(token)) return NONE;
+		
+		Integer id = ids.get(token);
+		return id != null ? id : UNBOUND;
+	}
+	
+	/**
+	 * Returns the id of a compiled token, looking it up again if it was
+	 * UNBOUND when it was compiled.
+	 *
+	 * @param id the id the token was compiled to (see find)
+	 * @param token the token
+	 * @return the id of the token, or NONE if it's still not interned
+	 */
+	public static int resolve(int id, String token) {
+		return id == UNBOUND ? lookup(token) : id;
+	}
+	
+	/**
+	 * Returns the (shared) String associated with the id.
+	 *
+	 * @param id the id of an interned name
+	 * @return the name
+	 */
+	public static String name(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Returns the number of interned names. Every id is less than this value.
+	 *
+	 * @return the number of interned names
+	 */
+	public static int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Tests whether the token is something that may be resolved as a name.
+	 *
+	 * @param token the token to test
+	 * @return false if the token is a number, a reference or a named argument
+	 */
+	public static boolean isName(String token) {
+		char c = token.charAt(0);
+
+		if (c == '$') return false;
+		if (c == '&') return !TokenBase.isReference(token);
+
+		return !TokenBase.isInt(token);
+	}
+}
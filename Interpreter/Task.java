@@ -0,0 +1,19 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// A quotation running on a fork of the interpreter that spawned it. The result is the fork once the quotation has finished
+class Task {
+	private final Future<Interpreter> result;
+	
+	public Task(Future<Interpreter> result) {
+		this.result = result;
+	}
+	
+	Interpreter join() throws InterruptedException, ExecutionException {
+		return result.get();
+	}
+	
+	public String toString() {
+		return result.isDone() ? "<task:done>" : "<task>";
+	}
+}
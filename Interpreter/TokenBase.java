@@ -1,8 +1,14 @@
+import java.util.Arrays;
 import java.util.HashMap;
 import java.io.*;
 import java.util.Scanner;
 
 abstract class TokenBase {
+	public static final String TRUE = "-1";		// The gloom booleans. These are shared rather than re-created on every comparison
+	public static final String FALSE = "0";
+	public static final long NOT_INT = Long.MIN_VALUE;		// Returned by intValue for values that aren't integers
+	public static final char ERROR_SPACE = '\u00a0';		// Error values are single tokens: their words are joined by non-breaking spaces so that re-parsing doesn't split them
+	
 	private String token;		// I forget how this works
 	private int needs;			// How many arguments does the function need
 
@@ -18,7 +24,29 @@ abstract class TokenBase {
 	// Each token expects a certain number of elements to be present on the stack in order to be run
 	public void hasElements(Stack<String> stack) {
 		if (stack.size() < needs)
-			throw new TokenError(String.format("Error in %s: Needs %d elements, Stack has %d", token, needs, stack.size()));
+			throw new TokenError("Error in %s: Needs %d elements, Stack has %d", token, needs, stack.size());
+	}
+	
+	// Creates the TokenError raised when the token isn't defined for the given value
+	public TokenError notDefined(String val) {
+		return new TokenError("Error in %s: Not defined for value %s of type %s", token, val, type(val));
+	}
+	
+	// Creates the TokenError raised when a list index is out of range
+	public TokenError outOfBounds(String index, int size) {
+		return new TokenError("Error in %s: Index %s is out of bounds for a list of size %d", token, index, size);
+	}
+	
+	// Converts an error message into an error value (which can be pushed onto the stack)
+	public static String error(String msg) {
+		if (!msg.startsWith("Error ")) msg = "Error " + msg;
+		
+		return msg.replace(' ', ERROR_SPACE);
+	}
+	
+	// Tests if the value is an error value
+	public static boolean isError(String val) {
+		return val.length() > 5 && val.charAt(5) == ERROR_SPACE && val.startsWith("Error");
 	}
 	
 	// Converts the string to it's integer value
@@ -38,49 +66,82 @@ abstract class TokenBase {
 		return hasType(val, "reference");
 	}
 	
+	// Tests if the value is an integer (without paying for a NumberFormatException when it isn't)
+	public static boolean isInt(String val) {
+		return intValue(val) != NOT_INT;
+	}
+	
+	// Parses the value as an integer without throwing. Returns NOT_INT if the value isn't an integer
+	public static long intValue(String val) {
+		int i = (val.length() > 1 && (val.charAt(0) == '-' || val.charAt(0) == '+')) ? 1 : 0;
+		int digits = val.length() - i;
+		long n = 0;
+		
+		if (digits == 0 || digits > 10) return NOT_INT;
+		
+		for (int j = i; j < val.length(); ++j) {
+			char c = val.charAt(j);
+			if (c < '0' || c > '9') return NOT_INT;
+			
+			n = n * 10 + (c - '0');
+		}
+		
+		if (val.charAt(0) == '-') n = -n;
+		
+		return n >= Integer.MIN_VALUE && n <= Integer.MAX_VALUE ? n : NOT_INT;
+	}
+	
 	// Tests if the given value has the type
 	public static boolean hasType(String val, String type) {
-		try {
-			switch (type) {
-				case "bool":
-					return "-1".equals(val) || "0".equals(val);
-				
-				case "list":
-					if (val.charAt(0) == '[') return true;
-					
-				case "reference":
-					toInt(val.substring(1));
-					return val.charAt(0) == '&';
+		switch (type) {
+			case "error":
+				return isError(val);
 				
-				case "int":
-					toInt(val);
-					return true;
+			case "bool":
+				return TRUE.equals(val) || FALSE.equals(val);
+			
+			case "list":										// A list literal or a reference
+				return val.charAt(0) == '[' || hasType(val, "reference");
 				
-				default:
-					return true;
-			}
-		} catch (NumberFormatException e)
-			return "string".equals(type);
+			case "reference":
+				return val.charAt(0) == '&' && isInt(val.substring(1));
+			
+			case "int":
+				return isInt(val);
+			
+			default:
+				return true;
+		}
 	}
 	
 	// Returns the type of the given value
 	public static String type(String val) {
-		try {
-			switch (val.charAt(0)) {
-				case '&':
-					toInt(val.substring(1));
-				case '[':
-					return "list";
-					
-				case '$':
-					return "string";
-					
-				default:
-					toInt(val);
-					return "int";
-			}
-		} catch (RuntimeException e)
-			return "string";
+		if (val.isEmpty()) return "string";
+		if (isError(val)) return "error";
+		
+		switch (val.charAt(0)) {
+			case '&':
+				return isInt(val.substring(1)) ? "list" : "string";
+				
+			case '[':
+				return "list";
+				
+			case '$':
+				return "string";
+				
+			default:
+				return isInt(val) ? "int" : "string";
+		}
+	}
+	
+	// Returns the token of every operation, in the order they're declared in Operation
+	public static TokenBase[] operations() {
+		TokenBase[] ret = new TokenBase[Operation.values().length];
+		
+		for (Operation op : Operation.values())
+			ret[op.ordinal()] = op.instruction;
+		
+		return ret;
 	}
 	
 	public static HashMap<String, TokenBase> allTokens() {
@@ -99,6 +160,66 @@ abstract class TokenBase {
 		return list.substring(2, list.length() - 2);
 	}
 	
+	// Splits a list into its top level elements. Nested (non-reference) lists are kept whole
+	public static String[] elements(String list) {
+		String[] tokens = nList(list).split(" ");
+		if (tokens.length == 1 && tokens[0].isEmpty()) return new String[0];
+		
+		List<String> ret = new List<>(tokens.length);
+		StringBuilder nested = new StringBuilder();
+		int depth = 0;
+		
+		for (String token : tokens) {
+			if ("[".equals(token)) ++depth;
+			
+			if (depth == 0) {
+				ret.add(token);
+				continue;
+			}
+			
+			if (nested.length() > 0) nested.append(' ');
+			nested.append(token);
+			
+			if ("]".equals(token) && --depth == 0) {
+				ret.add(nested.toString());
+				nested.setLength(0);
+			}
+		}
+		
+		return ret.toArray(new String[0]);
+	}
+	
+	// Raises a TokenError if the value is a reference to a map, a channel or a task rather than a list
+	public void checkList(Interpreter gloom, String list) {
+		String kind = isReference(list) ? gloom.handleType(list) : null;
+		
+		if (kind != null)
+			throw new TokenError("Error in %s: Expected a list but found a %s", token, kind);
+	}
+	
+	// Returns a read-only view of the list. Lazy lists are used directly rather than materialized
+	public Sequence sequence(Interpreter gloom, String list) {
+		checkList(gloom, list);
+		
+		Sequence seq = isReference(list) ? gloom.getSequence(list) : null;
+		return seq != null ? seq : Sequence.of(elements(deref(gloom, list)));
+	}
+	
+	// Returns the list as a PersistentList (the referenced list is left as it is)
+	public PersistentList persistent(Interpreter gloom, String list) {
+		checkList(gloom, list);
+		
+		return isReference(list) ? gloom.getPersistent(list) : PersistentList.of(sequence(gloom, list));
+	}
+	
+	// Returns the referenced list to be modified (see Sequence.set). Lazy lists are modified in their own form, list strings as a PersistentList
+	public Sequence modifiable(Interpreter gloom, String ref) {
+		checkList(gloom, ref);
+		
+		Sequence seq = gloom.getSequence(ref);
+		return seq != null ? seq : gloom.getPersistent(ref);
+	}
+	
 	// ???
 	public static String removeDelay(String str) {
 		return str.charAt(0) == ':' ? str.substring(1) : str;
@@ -126,7 +247,8 @@ abstract class TokenBase {
 		
 		for (int i = begin; i < end; ++i) {
 			sum = sum + " " + list[i];
-			
+		}
+		
 		return sum.substring(1);
 	}
 	
@@ -138,18 +260,11 @@ abstract class TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		hasElements(main);
 	}
-}
-
-// Token error class
-class TokenError extends RuntimeException {
-	String errorMsg;
-	
-	public TokenError(String msg) {
-		errorMsg = msg;
-	}
 	
-	public String what() {
-		return errorMsg;
+	// Tokens that change anything besides the main stack (definitions, references, let bindings, the retain stack, files, ...) are not pure
+	// Pure code can be run concurrently on workers that share this interpreter's tables, so tokens are only pure if they say so. 'visited' guards against recursive definitions
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
 	}
 }
 
@@ -172,10 +287,29 @@ class Evaluate extends TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		String toEval = deref(gloom, main.pop());
+		String toEval = main.pop();
+		
+		if (isReference(toEval) && gloom.isHandle(toEval)) {			// A map (or channel or task) evaluates to itself
+			main.push(toEval);
+			return;
+		}
+		
+		toEval = deref(gloom, toEval);
 		
-		if ("list".equals(type(toEval)))
+		if ("list".equals(type(toEval))) {
+			CompiledWord code = gloom.quotation(toEval);
+			
+			if (code != null) {
+				code.run(gloom, main);
+				return;
+			}
+			
 			toEval = nList(toEval);
+			
+		} else if (toEval.indexOf(' ') < 0 && toEval.indexOf('$') < 0) {		// A single value (eg. a number) doesn't need to be parsed
+			gloom.executeToken(toEval);
+			return;
+		}
 		
 		int nArgs = countArgs(toEval);							// Note: Evaluate will throw a "stack empty" error if it doesn't have enough arguments
 		
@@ -186,6 +320,10 @@ class Evaluate extends TokenBase {
 		
 		gloom.execute(toEval);
 	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
 }
 
 /*
@@ -202,9 +340,13 @@ class Size extends TokenBase {
 		super.run(gloom, main, retain);
 		
 		if (hasType(main.top(), "list"))
-			main.push("" + (deref(gloom, main.pop()).split(" ").length - 2));
+			main.push("" + sequence(gloom, main.pop()).size());
 		else
-			main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+			throw notDefined(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
 	}
 }
 
@@ -217,10 +359,21 @@ class Get extends TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		if (hasType(main.top(), "list"))
-			main.push(deref(gloom, main.pop()).split(" ")[toInt(main.pop()) + 1]);
-		else
-			main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+		if (hasType(main.top(), "list")) {
+			Sequence list = sequence(gloom, main.pop());
+			String index = main.pop();
+			
+			try {
+				main.push(list.get(toInt(index)));
+			} catch (IndexOutOfBoundsException e) {
+				throw outOfBounds(index, list.size());
+			}
+		} else
+			throw notDefined(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
 	}
 }
 
@@ -234,7 +387,18 @@ class Set extends TokenBase {
 		super.run(gloom, main, retain);
 		
 		
-		if (hasType(main.top(), "list")) {
+		if (isReference(main.top())) {
+			String ref = main.pop();
+			Sequence list = modifiable(gloom, ref);
+			String index = main.pop();
+			
+			try {
+				gloom.setReference(ref, list.set(toInt(index), main.pop()));
+			} catch (IndexOutOfBoundsException e) {
+				throw outOfBounds(index, list.size());
+			}
+			
+		} else if (hasType(main.top(), "list")) {
 			String ref = main.pop();
 			boolean isRef = hasType(ref, "reference");
 			
@@ -247,7 +411,11 @@ class Set extends TokenBase {
 				main.push(concat(sett));
 				
 		} else
-			main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+			throw notDefined(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
 	}
 }
 
@@ -260,7 +428,19 @@ class Remove extends TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		if (hasType(main.top(), "list")) {
+		if (isReference(main.top())) {
+			String ref = main.pop();
+			Sequence list = modifiable(gloom, ref);
+			String index = main.pop();
+			
+			try {
+				main.push(list.get(toInt(index)));
+				gloom.setReference(ref, list.remove(toInt(index)));
+			} catch (IndexOutOfBoundsException e) {
+				throw outOfBounds(index, list.size());
+			}
+			
+		} else if (hasType(main.top(), "list")) {
 			String ref = main.pop();
 			boolean isRef = hasType(ref, "reference");
 			
@@ -272,9 +452,13 @@ class Remove extends TokenBase {
 			
 			main.push(sett[spot]);
 		} else {
-			main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+			throw notDefined(main.pop());
 		}
 	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
 }
 
 // Inserts an element into a list
@@ -286,7 +470,18 @@ class Insert extends TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		if (hasType(main.top(), "list")) {
+		if (isReference(main.top())) {
+			String ref = main.pop();
+			Sequence list = modifiable(gloom, ref);
+			String index = main.pop();
+			
+			try {
+				gloom.setReference(ref, list.insert(toInt(index), main.pop()));
+			} catch (IndexOutOfBoundsException e) {
+				throw outOfBounds(index, list.size());
+			}
+			
+		} else if (hasType(main.top(), "list")) {
 			String ref = main.pop();
 			boolean isRef = hasType(ref, "reference");
 			
@@ -299,7 +494,11 @@ class Insert extends TokenBase {
 				main.push(concat(sett, 0, spot) + " " + main.pop() + " " + concat(sett, spot, sett.length));
 			
 		} else
-			main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+			throw notDefined(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
 	}
 }
 
@@ -313,16 +512,20 @@ class Append extends TokenBase {
 		super.run(gloom, main, retain);
 		
 		if (hasType(main.top(), "list")) {
-			String[] list1 = deref(gloom, main.pop()).split(" ");
+			PersistentList list1 = persistent(gloom, main.pop());
 			
 			if (hasType(main.top(), "list")) {
-				String[] list2 = deref(gloom, main.pop()).split(" ");
-				main.push(gloom.newReference(concat(list2, 0, list2.length - 1) + " " + concat(list1, 1, list1.length)));
+				PersistentList list2 = persistent(gloom, main.pop());
+				main.push(gloom.newReference(list2.append(list1)));
 				return;
 			}
 		}
 		
-		main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+		throw notDefined(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
 	}
 }
 
@@ -335,67 +538,150 @@ class Copy extends TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		if (hasType(main.top(), "list"))
+		if (isReference(main.top()) && gloom.getSequence(main.top()) != null)
+			main.push(gloom.newReference(gloom.getSequence(main.pop())));		// Lazy lists are immutable, so the copy can share them
+		else if (isReference(main.top()) && gloom.getMap(main.top()) != null)
+			main.push(gloom.copyMap(gloom.getMap(main.pop())));
+		else if (hasType(main.top(), "list")) {
+			checkList(gloom, main.top());												// Channels and tasks can't be copied
 			main.push(gloom.newReference(deref(gloom, main.pop())));
-		else
-			main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+		} else
+			throw notDefined(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+// Creates a lazy list of integers. ( n iota ) is [ 0 ... n-1 ] and ( start end range ) is [ start ... end-1 ]
+class MakeRange extends TokenBase {
+	public MakeRange(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String end = main.pop();
+		String start = getNeeds() == 2 ? main.pop() : "0";
+		
+		long from = intValue(start), to = intValue(end);
+		
+		if (to == NOT_INT || to != (int)to) throw notDefined(end);
+		if (from == NOT_INT || from != (int)from) throw notDefined(start);
+		if (to - from > Integer.MAX_VALUE)										// The size is computed as a long, as it can overflow an int (eg. -2147483648 2147483647 range)
+			throw new TokenError("Error in %s: A range of %d elements is too large", getToken(), to - from);
+		
+		main.push(gloom.newReference(new Range((int)from, 1, (int)(to - from))));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;										// The result is a new reference
 	}
 }
 
 /*
-* Variables and functions
+*  Higher order list operations
 */
 
-// Defines a new variable
-class Def extends TokenBase {
-	public Def(String token, int needs) {
+// Base class for the tokens that apply a quotation to every element of a list
+// When the list is large enough (see Interpreter.setParallelThreshold) and the quotation is pure, the work is spread over the fork-join pool
+abstract class HigherOrder extends TokenBase {
+	public HigherOrder(String token, int needs) {
 		super(token, needs);
 	}
 	
-	protected int countArgs(String func) {
-		int i = 0;
+	// Pops the list from the stack and returns its elements
+	protected Sequence popElements(Interpreter gloom, Stack<String> main) {
+		String list = main.pop();
 		
-		do
-			++i;
-		while (func.contains("$" + i));
+		if (!hasType(list, "list")) throw notDefined(list);
 		
-		return i;
+		return sequence(gloom, list);
 	}
 	
-	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
-		super.run(gloom, main, retain);
+	// Can the quotation be applied to the elements concurrently
+	protected boolean parallel(Interpreter gloom, String body, Sequence elems) {
+		if (elems.size() < gloom.getParallelThreshold())
+			return false;
 		
-		String body = deref(gloom, main.pop());							// When assigning a single variable, the lists can be dropped, however, that may result in problems
-		String names = deref(gloom, main.pop());						// If the variable was previously defined. Moreover, multiple variables can be assigned if they are within a list
+		if (elems.hasReferences())							// Code that is reached through an element can't be checked
+			return false;
 		
-		for (String name : names.split(" "))
-			gloom.addVariable(new Variable(body, removeDelay(name), countArgs(body) - 1));
+		return gloom.isPure(body, new java.util.HashSet<>());
+	}
+	
+	// Applies the quotation to every element, returning the value each left on the stack
+	protected String[] apply(Interpreter gloom, Stack<String> main, String body, Sequence elems) {
+		String[] ret = parallel(gloom, body, elems) ? gloom.parallelMap(body, elems) : null;
+		
+		if (ret == null) {									// The parallel run failed (eg. the quotation used elements below its argument)
+			ret = new String[elems.size()];
+			
+			for (int i = 0; i < ret.length; ++i) {
+				main.push(elems.get(i));
+				gloom.eval(body);
+				ret[i] = main.pop();
+			}
+		}
+		
+		return ret;
+	}
+	
+	// Stores the values as a new gloom list. Large lists of integers are stored as an IntSequence
+	protected static String newList(Interpreter gloom, String[] vals, int n) {
+		IntSequence ints = n >= IntSequence.MIN_SIZE ? IntSequence.of(vals, n) : null;
+		
+		return ints != null ? gloom.newReference(ints) : gloom.newReference(makeList(vals, n));
+	}
+	
+	// Stores the integers as a new gloom list
+	protected static String newList(Interpreter gloom, int[] vals) {
+		if (vals.length >= IntSequence.MIN_SIZE) return gloom.newReference(new IntSequence(vals));
+		
+		StringBuilder ret = new StringBuilder("[ ");
+		
+		for (int val : vals)
+			ret.append(val).append(' ');
+		
+		return gloom.newReference(ret.append(']').toString());
+	}
+	
+	// Collects the values into a new gloom list
+	protected static String makeList(String[] vals, int n) {
+		StringBuilder ret = new StringBuilder("[ ");
+		
+		for (int i = 0; i < n; ++i)
+			ret.append(vals[i]).append(' ');
+		
+		return ret.append(']').toString();
 	}
 }
 
-// Represents a variable
-class Variable extends TokenBase {
-	private String body;
-	
-	public Variable(String body, String token, int needs) {
+// Applies the quotation to each element, producing a new list ( list [ quot ] map )
+class MapList extends HigherOrder {
+	public MapList(String token, int needs) {
 		super(token, needs);
-		this.body = body;
 	}
 	
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		gloom.execute(body + " eval");					// If the variable is a function, then the function is run
+		String body = main.pop();
+		String[] vals = apply(gloom, main, body, popElements(gloom, main));
+		
+		main.push(newList(gloom, vals, vals.length));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;										// The result is a new reference
 	}
 }
 
-/*
-*  Control Flow
-*/
-
-// Runs a basic loop structure
-class Loop extends TokenBase {
-	public Loop(String token, int needs) {
+// Keeps the elements for which the quotation is true ( list [ pred ] filter )
+class Filter extends HigherOrder {
+	public Filter(String token, int needs) {
 		super(token, needs);
 	}
 	
@@ -403,109 +689,670 @@ class Loop extends TokenBase {
 		super.run(gloom, main, retain);
 		
 		String body = main.pop();
+		Sequence elems = popElements(gloom, main);
+		String[] keep = apply(gloom, main, body, elems);
+		int n = 0;
 		
-		do
-			gloom.execute(body + " eval");
-		while (main.pop().equals("-1"));
+		for (int i = 0; i < keep.length; ++i)				// The kept elements are collected in the (already read) front of keep
+			if (TRUE.equals(keep[i])) keep[n++] = elems.get(i);
+		
+		main.push(newList(gloom, keep, n));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;										// The result is a new reference
 	}
 }
 
-// Performs a basic if-then-else structure
-class If extends TokenBase {
-	public If(String token, int needs) {
+// Runs the quotation on each element in order, leaving its results on the stack ( list [ quot ] each )
+class Each extends HigherOrder {
+	public Each(String token, int needs) {
 		super(token, needs);
 	}
 	
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		String ifFalse = isReference(main.top()) ? gloom.getReference(main.pop()) : main.pop();
-		String ifTrue = isReference(main.top()) ? gloom.getReference(main.pop()) : main.pop();
-
-		gloom.execute("eval");
+		String body = main.pop();
+		Sequence elems = popElements(gloom, main);
 		
-		switch (main.pop()) {
-			case "-1":
-				gloom.execute(ifTrue + " eval");
-				break;
-			case "0":
-				gloom.execute(ifFalse + " eval");
-				break;
-			default:
-				return;
+		for (int i = 0; i < elems.size(); ++i) {
+			main.push(elems.get(i));
+			gloom.eval(body);
 		}
 	}
 }
 
-/*
-*  Math library
-*/
-
-// This defines a further abstract class to define binary mathematical operators
-// This class removes the process of testing type correctness from children classes
-abstract class Math extends TokenBase {
-	public Math(String token, int needs) {
+// Combines the elements with the quotation from left to right ( list init [ quot ] fold ) or ( list [ quot ] reduce )
+// Reduce is only run in parallel for quotations that are known to be associative
+class Fold extends HigherOrder {
+	private static final java.util.Set<String> associative = java.util.Set.of("+", "*", "math.max", "math.min", "and", "or");
+	
+	public Fold(String token, int needs) {
 		super(token, needs);
 	}
 	
-	abstract String op(String left, String right);
-	abstract boolean definedFor(String type, boolean lhs);						
-	
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		if (definedFor(type(main.top()), true)) {
-			String right = main.pop();
+		String body = main.pop();
+		String acc = getNeeds() == 3 ? main.pop() : null;
+		Sequence elems = popElements(gloom, main);
+		int i = 0;
+		
+		if (acc == null) {
+			if (elems.size() == 0) throw new TokenError("Error in %s: Can't reduce an empty list", getToken());
 			
-			if (definedFor(type(main.top()), false)) {
-				main.push(op(main.pop(), right));
-				return;
+			if (associative.contains(nList(deref(gloom, body)).trim()) && parallel(gloom, body, elems)) {
+				acc = gloom.parallelReduce(body, elems);
+				
+				if (acc != null) {
+					main.push(acc);
+					return;
+				}
 			}
+			
+			acc = elems.get(i++);
 		}
 		
-		main.push(String.format("Error in %s: Not defined for value %s of type %s", getToken(), main.top(), type(main.pop())));
+		for (; i < elems.size(); ++i) {
+			main.push(acc);
+			main.push(elems.get(i));
+			gloom.eval(body);
+			acc = main.pop();
+		}
+		
+		main.push(acc);
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
 	}
 }
 
-// Mathematical '+' operator
-class Add extends Math {
-	public Add(String token, int needs) {
+// Sorts the list into a new list ( list sort ). Integers are ordered by value and come before every other value (which are ordered as strings)
+class Sort extends HigherOrder {
+	public Sort(String token, int needs) {
 		super(token, needs);
 	}
 	
-	String op(String left, String right) {
-		return "" + (toInt(left) + toInt(right));
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		Sequence elems = popElements(gloom, main);
+		int[] ints = ints(elems);
+		
+		if (ints != null) {
+			if (ints.length >= gloom.getParallelThreshold())
+				Arrays.parallelSort(ints);
+			else
+				Arrays.sort(ints);
+			
+			main.push(newList(gloom, ints));
+			return;
+		}
+		
+		String[] vals = toArray(elems);
+		
+		if (vals.length >= gloom.getParallelThreshold())
+			Arrays.parallelSort(vals, Sort::compare);
+		else
+			Arrays.sort(vals, Sort::compare);
+		
+		main.push(newList(gloom, vals, vals.length));
 	}
 	
-	boolean definedFor(String type, boolean lhs) {
-		return "int".equals(type);
+	// The order used by sort, bsearch and index-of
+	static int compare(String left, String right) {
+		long l = intValue(left), r = intValue(right);
+		
+		if (l != NOT_INT && r != NOT_INT) return Long.compare(l, r);
+		if (l != NOT_INT || r != NOT_INT) return l != NOT_INT ? -1 : 1;
+		
+		return left.compareTo(right);
 	}
 	
-}
-
-// Mathematical '-' operator
-class Sub extends Math {
-	public Sub(String token, int needs) {
-		super(token, needs);
+	// Returns the elements as ints, or null if any element isn't an integer
+	static int[] ints(Sequence elems) {
+		if (elems instanceof IntSequence) return ((IntSequence)elems).toIntArray();
+		
+		int[] ret = new int[elems.size()];
+		
+		for (int i = 0; i < ret.length; ++i) {
+			long n = intValue(elems.get(i));
+			if (n == NOT_INT || n != (int)n) return null;
+			
+			ret[i] = (int)n;
+		}
+		
+		return ret;
 	}
 	
-	String op(String left, String right) {
-		return "" + (toInt(left) - toInt(right));
+	static String[] toArray(Sequence elems) {
+		String[] ret = new String[elems.size()];
+		
+		for (int i = 0; i < ret.length; ++i)
+			ret[i] = elems.get(i);
+		
+		return ret;
 	}
 	
-	boolean definedFor(String type, boolean lhs) {
-		return "int".equals(type);
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;										// The result is a new reference
 	}
 }
 
-// Mathematical '*' operator
+// Sorts the list into a new list using a comparison ( list [ less ] sort-by ). The quotation is given two elements and leaves t if the first comes before the second
+class SortBy extends HigherOrder {
+	public SortBy(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String body = main.pop();
+		String[] vals = Sort.toArray(popElements(gloom, main));
+		
+		try {
+			Arrays.sort(vals, (l, r) -> less(gloom, main, body, l, r) ? -1 : less(gloom, main, body, r, l) ? 1 : 0);		// The sort is stable, so equal elements keep their order
+		} catch (IllegalArgumentException e) {
+			throw new TokenError("Error in %s: The comparison %s is not consistent", getToken(), body);
+		}
+		
+		main.push(newList(gloom, vals, vals.length));
+	}
+	
+	private static boolean less(Interpreter gloom, Stack<String> main, String body, String left, String right) {
+		main.push(left);
+		main.push(right);
+		gloom.eval(body);
+		
+		return TRUE.equals(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;										// The result is a new reference
+	}
+}
+
+// Finds a value in a sorted list ( value list bsearch ). Leaves its index, or -(insertion point) - 1 if the value isn't in the list
+class BSearch extends HigherOrder {
+	public BSearch(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		Sequence elems = popElements(gloom, main);
+		String value = main.pop();
+		long n = intValue(value);
+		
+		if (elems instanceof IntSequence && n != NOT_INT && n == (int)n) {
+			main.push(Integer.toString(((IntSequence)elems).search((int)n)));
+			return;
+		}
+		
+		int low = 0, high = elems.size() - 1;
+		
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = Sort.compare(elems.get(mid), value);
+			
+			if (c == 0) {
+				main.push(Integer.toString(mid));
+				return;
+			}
+			
+			if (c < 0)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		
+		main.push(Integer.toString(-(low + 1)));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+}
+
+// Finds the first index of a value in a list ( value list index-of ). Leaves -1 if the value isn't in the list
+class IndexOf extends HigherOrder {
+	public IndexOf(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		Sequence elems = popElements(gloom, main);
+		String value = main.pop();
+		long n = intValue(value);
+		int ret = -1;
+		
+		if (elems instanceof IntSequence) {
+			IntSequence ints = (IntSequence)elems;
+			
+			for (int i = 0; n != NOT_INT && ret < 0 && i < ints.size(); ++i)
+				if (ints.getInt(i) == n) ret = i;
+		
+		} else {
+			for (int i = 0; ret < 0 && i < elems.size(); ++i)
+				if (Sort.compare(elems.get(i), value) == 0) ret = i;
+		}
+		
+		main.push(Integer.toString(ret));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+}
+
+/*
+* Variables and functions
+*/
+
+// Defines a new variable
+class Def extends TokenBase {
+	public Def(String token, int needs) {
+		super(token, needs);
+	}
+	
+	protected int countArgs(String func) {
+		int i = 0;
+		
+		do
+			++i;
+		while (func.contains("$" + i));
+		
+		return i;
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String body = main.pop();										// When assigning a single variable, the lists can be dropped, however, that may result in problems
+		String names = deref(gloom, main.pop());						// If the variable was previously defined. Moreover, multiple variables can be assigned if they are within a list
+		
+		if (!isReference(body) || !gloom.isHandle(body))				// Maps, channels and tasks are bound by reference (so the variable always names the same one)
+			body = deref(gloom, body);
+		
+		for (String name : names.split(" "))
+			gloom.addVariable(new Variable(body, removeDelay(name), countArgs(body) - 1));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+// Binds a value to a name in the current frame. Unlike def, nothing is allocated and the binding is dropped when the frame exits
+class Let extends TokenBase {
+	public Let(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String value = main.pop();
+		String name = removeDelay(main.top());
+		
+		if (!Symbols.isName(name))
+			throw notDefined(main.pop());
+		
+		main.pop();
+		gloom.bindLocal(Symbols.intern(name), value);
+	}
+}
+
+// Caches the results of a pure defined word (see Memo). eg. after :square [ $1 $1 * ] !, :square 1 1024 memo caches square by its top element, keeping at most 1024 results
+// Words that touch the retain stack (>r, r>) aren't pure, so memoizing them (eg. collatz in collatz.gloom) is an error
+class Memoize extends TokenBase {
+	public Memoize(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		int capacity = toInt(main.pop());
+		int arity = toInt(main.pop());
+		Variable word = defined(gloom, this, main.pop());
+		
+		if (arity < 0 || capacity < 1)
+			throw new TokenError("Error in %s: Invalid arity %d or size %d", getToken(), arity, capacity);
+		
+		if (!word.isPure(gloom, new java.util.HashSet<>()))
+			throw new TokenError("Error in %s: %s is not pure", getToken(), word.getToken());
+		
+		word.setMemo(new Memo(word, arity, capacity));
+	}
+	
+	// Finds the word defined (by def) under the name
+	static Variable defined(Interpreter gloom, TokenBase op, String name) {
+		name = removeDelay(name);
+		TokenBase ret = Symbols.isName(name) ? gloom.environment().get(Symbols.lookup(name)) : null;
+		
+		if (!(ret instanceof Variable))
+			throw new TokenError("Error in %s: %s is not a defined word", op.getToken(), name);
+		
+		return (Variable)ret;
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+// Pushes the hits, misses and size of a memoized word's cache
+class MemoStats extends TokenBase {
+	public MemoStats(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		Variable word = Memoize.defined(gloom, this, main.pop());
+		Memo memo = word.getMemo();
+		
+		if (memo == null)
+			throw new TokenError("Error in %s: %s is not memoized", getToken(), word.getToken());
+		
+		main.push(Long.toString(memo.hits()));
+		main.push(Long.toString(memo.misses()));
+		main.push(Integer.toString(memo.size()));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+/*
+*  Map Library
+*/
+
+// The map words. Keys may be integers or strings (a delayed key is the same as the undelayed one, ie. :a is a)
+// eg. m map.new ! 10 :a m map.put stores 10 under a in the map m
+class MapOp extends TokenBase {
+	private String operation;
+	
+	public MapOp(String token, int needs) {
+		super(token, needs);
+		operation = token.split("\\.")[1];
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		if ("new".equals(operation)) {									// map.new
+			main.push(gloom.newMap());
+			return;
+		}
+		
+		String ref = main.pop();
+		Dict map = !isReference(ref) ? null : "put".equals(operation) || "remove".equals(operation) ? gloom.ownMap(ref) : gloom.getMap(ref);
+		
+		if (map == null) throw notDefined(ref);
+		
+		switch (operation) {
+			case "size":												// map map.size
+				main.push(Integer.toString(map.size()));
+				break;
+				
+			case "has":													// key map map.has
+				main.push(map.has(removeDelay(main.pop())) ? TRUE : FALSE);
+				break;
+				
+			case "get":													// key map map.get
+				String key = removeDelay(main.pop());
+				String value = map.get(key);
+				
+				if (value == null) throw new TokenError("Error in %s: Key %s is not in the map", getToken(), key);
+				main.push(value);
+				break;
+				
+			case "put":													// value key map map.put
+				key = removeDelay(main.pop());
+				map.put(key, main.pop());
+				break;
+				
+			case "remove":												// key map map.remove
+				map.remove(removeDelay(main.pop()));
+				break;
+				
+			default:
+				break;
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return "get".equals(operation) || "has".equals(operation) || "size".equals(operation);
+	}
+}
+
+/*
+*  Concurrency
+*/
+
+// Runs a quotation on another thread ( args... n [ quot ] spawn ). The quotation runs on a fork of the interpreter whose stack holds the top n values. Leaves the task (see join)
+class Spawn extends TokenBase {
+	public Spawn(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String body = main.pop();
+		int n = toInt(main.pop());
+		
+		if (n < 0 || n > main.size())
+			throw new TokenError("Error in %s: Needs %d elements, Stack has %d", getToken(), n, main.size());
+		
+		String[] args = new String[n];
+		for (int i = n - 1; i >= 0; --i)
+			args[i] = main.pop();
+		
+		try {
+			main.push(gloom.newHandle(gloom.spawn(body, args)));
+		} catch (java.util.concurrent.RejectedExecutionException e) {
+			for (String arg : args)
+				main.push(arg);
+			
+			throw new TokenError("Error in %s: Too many tasks are running", getToken());
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+// Waits for a task to finish and leaves everything it left on its stack ( task join )
+class Join extends TokenBase {
+	public Join(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String ref = main.pop();
+		Task task = isReference(ref) ? gloom.getHandle(ref, Task.class) : null;
+		
+		if (task == null) throw notDefined(ref);
+		
+		try {
+			gloom.join(task);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TokenError("Error in %s: Interrupted", getToken());
+		} catch (java.util.concurrent.ExecutionException e) {
+			throw new TokenError("Error in %s: The task failed (%s)", getToken(), e.getCause());
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+// The channel words. eg. 16 chan.new leaves a channel holding up to 16 values, value c chan.send and c chan.recv pass values through it
+class ChanOp extends TokenBase {
+	private String operation;
+	
+	public ChanOp(String token, int needs) {
+		super(token, needs);
+		operation = token.split("\\.")[1];
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		if ("new".equals(operation)) {									// capacity chan.new
+			String capacity = main.pop();
+			if (!isInt(capacity) || toInt(capacity) < 1) throw notDefined(capacity);
+			
+			main.push(gloom.newHandle(new Channel(toInt(capacity))));
+			return;
+		}
+		
+		String ref = main.pop();
+		Channel channel = isReference(ref) ? gloom.getHandle(ref, Channel.class) : null;
+		
+		if (channel == null) throw notDefined(ref);
+		
+		try {
+			if ("send".equals(operation))								// value channel chan.send
+				channel.send(gloom.export(main.pop()));
+			else														// channel chan.recv
+				main.push(gloom.adopt(channel.receive()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TokenError("Error in %s: Interrupted", getToken());
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+/*
+*  Control Flow
+*/
+
+// Runs a basic loop structure
+class Loop extends TokenBase {
+	public Loop(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String body = main.pop();
+		LoopEvent event = new LoopEvent();
+		event.begin();
+		
+		do {
+			gloom.eval(body);
+			++event.iterations;
+		} while (TRUE.equals(main.pop()));
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.token = getToken();
+			event.commit();
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+}
+
+// Performs a basic if-then-else structure
+class If extends TokenBase {
+	public If(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		String ifFalse = isReference(main.top()) ? gloom.getReference(main.pop()) : main.pop();
+		String ifTrue = isReference(main.top()) ? gloom.getReference(main.pop()) : main.pop();
+
+		gloom.call("eval");
+		
+		switch (main.pop()) {
+			case TRUE:
+				gloom.eval(ifTrue);
+				break;
+			case FALSE:
+				gloom.eval(ifFalse);
+				break;
+			default:
+				return;
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
+	}
+}
+
+/*
+*  Math library
+*/
+
+// Mathematical '+' operator
+class Add extends Math {
+	public Add(String token, int needs) {
+		super(token, needs);
+	}
+	
+	int op(int left, int right) {
+		return left + right;
+	}
+	
+	boolean definedFor(String type, boolean lhs) {
+		return "int".equals(type);
+	}
+	
+}
+
+// Mathematical '-' operator
+class Sub extends Math {
+	public Sub(String token, int needs) {
+		super(token, needs);
+	}
+	
+	int op(int left, int right) {
+		return left - right;
+	}
+	
+	boolean definedFor(String type, boolean lhs) {
+		return "int".equals(type);
+	}
+}
+
+// Mathematical '*' operator
 class Mult extends Math {
 	public Mult(String token, int needs) {
 		super(token, needs);
 	}
 	
-	String op(String left, String right) {
-		return "" + (toInt(left) * toInt(right));
+	int op(int left, int right) {
+		return left * right;
 	}
 	
 	boolean definedFor(String type, boolean lhs) {
@@ -519,8 +1366,8 @@ class Div extends Math {
 		super(token, needs);
 	}
 	
-	String op(String left, String right) {
-		return "" + (toInt(left) / toInt(right));
+	int op(int left, int right) {
+		return left / right;
 	}
 	
 	boolean definedFor(String type, boolean lhs) {
@@ -534,10 +1381,8 @@ class Mod extends Math {
 		super(token, needs);
 	}
 	
-	String op(String left, String right) {
-		int rhs = toInt(right);
-		
-		return "" + (((toInt(left) % rhs) + rhs) % rhs);		// Note that this is a mathematical mod operation
+	int op(int left, int right) {
+		return ((left % right) + right) % right;		// Note that this is a mathematical mod operation
 	}
 	
 	boolean definedFor(String type, boolean lhs) {
@@ -555,33 +1400,41 @@ abstract class Compare extends TokenBase {
 	}
 }
 
-// All comparison operations in gloom are defined in terms of '>'
-class Greater extends TokenBase /* Compare */ {
-	public Greater(String token, int needs) {
+/*
+*  Stack interaction classes
+*/
+
+// Moves an element from the main stack to the retain stack
+class ToRetain extends TokenBase {
+	public ToRetain(String token, int needs) {
 		super(token, needs);
 	}
 	
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		main.push((toInt(main.pop()) < toInt(main.pop())) ? "-1" : "0");
+		retain.push(main.pop());
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
 	}
 }
 
-/*
-*  Stack interaction classes
-*/
-
-// Moves an element from the main stack to the retain stack
-class ToRetain extends TokenBase {
-	public ToRetain(String token, int needs) {
+// Removes the element at the top of the stack
+class Drop extends TokenBase {
+	public Drop(String token, int needs) {
 		super(token, needs);
 	}
 	
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		retain.push(main.pop());
+		main.pop();
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
 	}
 }
 
@@ -596,6 +1449,10 @@ class ToMain extends TokenBase {
 		
 		main.push(retain.pop());
 	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
 }
 
 /*
@@ -611,7 +1468,14 @@ class Type extends TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		main.push(type(main.top()));
+		String val = main.top();
+		String kind = isReference(val) ? gloom.handleType(val) : null;
+		
+		main.push(kind != null ? kind : type(val));
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
 	}
 }
 
@@ -637,7 +1501,18 @@ class TypeCheck extends TokenBase {
 	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
 		super.run(gloom, main, retain);
 		
-		main.push(hasType(main.pop(), predicate) ? "-1" : "0");
+		String val = main.pop();
+		
+		String kind = isReference(val) ? gloom.handleType(val) : null;		// Maps, channels and tasks aren't lists
+		
+		if ("map".equals(predicate))
+			main.push("map".equals(kind) ? TRUE : FALSE);
+		else
+			main.push(kind == null && hasType(val, predicate) ? TRUE : FALSE);
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
 	}
 }
 
@@ -655,8 +1530,22 @@ class Rep extends TokenBase {
 		int n = toInt(main.pop());
 		String body = main.pop();
 		
+		LoopEvent event = new LoopEvent();
+		event.begin();
+		
 		for (int i = 0; i < n; ++i)
-			gloom.execute(body + " eval");
+			gloom.eval(body);
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.token = getToken();
+			event.iterations = n;
+			event.commit();
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return true;
 	}
 }
 
@@ -670,16 +1559,49 @@ class Import extends TokenBase {
 		super.run(gloom, main, retain);
 		String filename = main.pop();
 		
-		try
+		try {
 			gloom.loadFile(filename);
+		} catch (FileNotFoundException e) {
+			throw new TokenError("Error in %s: File %s not found", getToken(), filename);
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
+}
+
+// Pushes a lazy list of the lines of a file ( filename file.lines ). See FileLines
+class ReadLines extends TokenBase {
+	public ReadLines(String token, int needs) {
+		super(token, needs);
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		String filename = main.pop();
 		
-		catch (FileNotFoundException e)
-			throw new TokenError(String.format("Error in %s: File % not found", getToken(), filename));
+		try {
+			main.push(gloom.newReference(new FileLines(java.nio.file.Paths.get(filename))));
+		} catch (java.nio.file.NoSuchFileException | java.nio.file.InvalidPathException e) {
+			throw new TokenError("Error in %s: File %s not found", getToken(), filename);
+		} catch (java.nio.file.AccessDeniedException e) {
+			throw new TokenError("Error in %s: Can't read %s (permission denied)", getToken(), filename);
+		} catch (java.nio.file.FileSystemException e) {
+			throw new TokenError("Error in %s: Can't read %s (%s)", getToken(), filename, e.getReason() != null ? e.getReason() : e.getMessage());
+		} catch (IOException e) {
+			throw new TokenError("Error in %s: Can't read %s (%s)", getToken(), filename, e.getMessage());
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
 	}
 }
 
 // Debug Library
 class DebugOp extends TokenBase {
+	private static final int TRACE_CAPACITY = 4096;	// The number of calls debug.trace keeps
 	private String operation;
 	
 	public DebugOp(String token, int needs) {
@@ -703,15 +1625,104 @@ class DebugOp extends TokenBase {
 			case "remove":
 				int n = toInt(main.pop());
 				
-				if (n < 0) throw new TokenError("You can't remove what's not there!");
+				if (n < 0) throw new TokenError("Error in %s: You can't remove what's not there!", getToken());
 				while (n-- > 0) main.pop();
 			
 				break;
 				
+			case "profile":									// on | sample | off | report | stacks | samples
+				profile(gloom, main.pop());
+				break;
+				
+			case "trace":									// on | errors | off | dump
+				trace(gloom, main.pop());
+				break;
+				
+			case "mem":										// main | retain | refs | variables | all
+				String part = main.pop();
+				
+				try {
+					main.push(Long.toString(gloom.memoryUsage(part)));
+				} catch (IllegalArgumentException e) {
+					throw new TokenError("Error in %s: Unknown part %s", getToken(), part);
+				}
+				
+				break;
+				
 			default:
 				break;
 		}
 	}
+	
+	// Controls the interpreter's profiler
+	private void profile(Interpreter gloom, String mode) {
+		try {
+			switch (mode) {
+				case "on":
+					gloom.startProfiling(0);
+					break;
+					
+				case "sample":
+					gloom.startProfiling(1000);
+					break;
+					
+				case "off":
+					gloom.stopProfiling();
+					break;
+					
+				case "report":
+				case "stacks":
+				case "samples":									// The stacks weighted by sample count rather than by self time
+					Profiler p = gloom.profiler();
+					if (p == null) throw new TokenError("Error in %s: The profiler is not running", getToken());
+					
+					if ("report".equals(mode))
+						p.report(gloom.output());
+					else if ("stacks".equals(mode))
+						p.collapsed(gloom.output(), false);
+					else if (p.isSampling())
+						p.collapsed(gloom.output(), true);
+					else
+						throw new TokenError("Error in %s: The profiler is not sampling (start it with sample)", getToken());
+					
+					break;
+					
+				default:
+					throw new TokenError("Error in %s: Unknown mode %s", getToken(), mode);
+			}
+		} catch (IOException e) {
+			throw new TokenError("Error in %s: %s", getToken(), e.getMessage());
+		}
+	}
+	
+	// Controls the interpreter's trace of recent calls
+	private void trace(Interpreter gloom, String mode) {
+		switch (mode) {
+			case "on":
+				gloom.startTracing(TRACE_CAPACITY, false);
+				break;
+				
+			case "errors":
+				gloom.startTracing(TRACE_CAPACITY, true);
+				break;
+				
+			case "off":
+				gloom.stopTracing();
+				break;
+				
+			case "dump":
+				if (gloom.trace() == null) throw new TokenError("Error in %s: The trace is not running", getToken());
+				gloom.dumpTrace(getToken());
+				break;
+				
+			default:
+				throw new TokenError("Error in %s: Unknown mode %s", getToken(), mode);
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return false;
+	}
 }
 
 enum Operation {
@@ -723,6 +1734,32 @@ enum Operation {
 	REMOVE(new Remove("remove", 2)),
 	INSERT(new Insert("insert", 3)),
 	APPEND(new Append("append", 2)),
+	IOTA(new MakeRange("iota", 1)),
+	RANGE(new MakeRange("range", 2)),
+	MAP(new MapList("map", 2)),
+	FILTER(new Filter("filter", 2)),
+	EACH(new Each("each", 2)),
+	FOLD(new Fold("fold", 3)),
+	REDUCE(new Fold("reduce", 2)),
+	SORT(new Sort("sort", 1)),
+	SORTBY(new SortBy("sort-by", 2)),
+	BSEARCH(new BSearch("bsearch", 2)),
+	INDEXOF(new IndexOf("index-of", 2)),
+	
+	// Map Library
+	MAPNEW(new MapOp("map.new", 0)),
+	MAPGET(new MapOp("map.get", 2)),
+	MAPPUT(new MapOp("map.put", 3)),
+	MAPHAS(new MapOp("map.has", 2)),
+	MAPREMOVE(new MapOp("map.remove", 2)),
+	MAPSIZE(new MapOp("map.size", 1)),
+	
+	// Concurrency
+	SPAWN(new Spawn("spawn", 2)),
+	JOIN(new Join("join", 1)),
+	CHANNEW(new ChanOp("chan.new", 1)),
+	CHANSEND(new ChanOp("chan.send", 2)),
+	CHANRECV(new ChanOp("chan.recv", 1)),
 	
 	// Control Flow
 	REPLICATE(new Rep("rep", 2)),
@@ -730,9 +1767,11 @@ enum Operation {
 	IF(new If("if", 3)),
 	
 	// Variables
-	//LET(new Let("!!", 2)),
+	LET(new Let("!!", 2)),
 	DEFINE(new Def("!", 2)),
 	EVAL(new Evaluate("eval", 1)),
+	MEMO(new Memoize("memo", 3)),
+	MEMOSTATS(new MemoStats("memo.stats", 1)),
 	
 	// Math Library
 	PLUS(new Add("+", 2)),
@@ -750,7 +1789,7 @@ enum Operation {
 	DUP(new Variable("[ $1 $1 ]", "dup", 1)),
 	OVER(new Variable("[ $2 $1 $2 ]", "over", 2)),
 	SWAP(new Variable("[ $1 $2 ]", "swap", 2)),
-	DROP(new Variable("[ [ @ ] $1 ! ]", "drop", 1)),					// Stores the element at the top of the stack in the '@' variable implicitly removing it from the stack
+	DROP(new Drop("drop", 1)),
 	RETAIN(new ToRetain(">r", 1)),
 	USE(new ToMain("r>", 1)),
 	
@@ -774,16 +1813,21 @@ enum Operation {
 	// Debug Library
 	STACK(new DebugOp("debug.size", 1)),
 	DREMOVE(new DebugOp("debug.remove", 1)),
+	PROFILE(new DebugOp("debug.profile", 1)),
+	MEM(new DebugOp("debug.mem", 1)),
+	TRACE(new DebugOp("debug.trace", 1)),
 	CLEAR(new Variable("[ main debug.size debug.remove ]", "debug.clear", 0)),
 	IMPORT(new Import("import", 1)),
+	LINES(new ReadLines("file.lines", 1)),
 	
 	// Type information
 	TYPE(new Type("type", 1)),
 	INTQ(new TypeCheck("int?", 1)),
-	LISTQ(new TypeCheck("list?", 1));
+	LISTQ(new TypeCheck("list?", 1)),
+	MAPQ(new TypeCheck("map?", 1)),
+	ERRORQ(new TypeCheck("error?", 1));
 	
 	//EQ(new Equal("=", 2)), // There might be times where VEQ does not hold
-	//IOTA(new Variable("[ $$1 $$1 0 > [ $$1 1 - -1 ] [ 0 ]1 if ] loop ]", "iota", 1)),
 	//FOR(new Variable("[ [ $$1 $3 > [ $1 eval $$1 $2 - -1 ] [ 0 ] if ] loop ]", "for", 3));
 	
 	public String token;
@@ -0,0 +1,36 @@
+// Token error class. These are raised for every recoverable gloom error, so no stack trace is captured and the message is only formatted when needed
+class TokenError extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	
+	String errorMsg;
+	private Object[] args;
+	
+	public TokenError(String msg) {
+		super(null, null, false, false);
+		errorMsg = msg;
+	}
+	
+	public TokenError(String format, Object... args) {
+		super(null, null, false, false);
+		errorMsg = format;
+		this.args = args;
+	}
+	
+	public String what() {
+		if (args != null) {
+			errorMsg = String.format(errorMsg, args);
+			args = null;
+		}
+		
+		return errorMsg;
+	}
+	
+	// The error value that is pushed onto the stack
+	public String value() {
+		return TokenBase.error(what());
+	}
+	
+	public String getMessage() {
+		return what();
+	}
+}
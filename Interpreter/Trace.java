@@ -0,0 +1,81 @@
+import java.io.IOException;
+
+/**
+ * A record of the most recent calls made by a gloom interpreter, for finding
+ * out how a script got into the state it's in. Every dispatch made by
+ * Interpreter.call writes the token's symbol id and the depth of the main
+ * stack into a ring buffer. Once the buffer is full the oldest calls are
+ * overwritten.
+ *
+ * The buffer is allocated up front, so recording a call is two array stores
+ * and nothing is allocated while tracing. An interpreter that isn't tracing
+ * only pays for a null check.
+ */
+public class Trace {
+	private final int[] ids;
+	private final int[] depths;					// The main stack's depth when each call was made
+	private final int mask;
+	private final boolean dumpOnError;
+	private long count;							// The number of calls recorded (the next call is written to count & mask)
+	
+	/**
+	 * Constructs an empty trace.
+	 *
+	 * @param capacity the number of calls to keep (rounded up to a power of 2)
+	 * @param dumpOnError whether the trace is written out whenever a TokenError is raised
+	 */
+	public Trace(int capacity, boolean dumpOnError) {
+		int size = Integer.highestOneBit(java.lang.Math.max(capacity, 2) - 1) << 1;
+		ids = new int[size];
+		depths = new int[size];
+		mask = size - 1;
+		this.dumpOnError = dumpOnError;
+	}
+	
+	/**
+	 * Records a call.
+	 *
+	 * @param id the symbol id of the token being called
+	 * @param depth the number of elements on the main stack
+	 */
+	void record(int id, int depth) {
+		int i = (int)(count++ & mask);
+		ids[i] = id;
+		depths[i] = depth;
+	}
+	
+	boolean dumpsOnError() {
+		return dumpOnError;
+	}
+	
+	/**
+	 * Returns the number of calls recorded since the trace was started (not
+	 * just the ones still in the buffer).
+	 *
+	 * @return the number of calls recorded
+	 */
+	public long count() {
+		return count;
+	}
+	
+	/**
+	 * Writes the calls in the buffer, oldest first. Each line holds the
+	 * call's number, the depth of the main stack and the token.
+	 *
+	 * @throws IOException if out can't be written to
+	 * @param out where to write the trace
+	 * @param reason the first line of the dump (eg. the error that caused it)
+	 */
+	public void dump(Appendable out, String reason) throws IOException {
+		long first = java.lang.Math.max(0, count - ids.length);
+		
+		out.append(reason).append(System.lineSeparator());
+		
+		for (long n = first; n < count; ++n) {
+			int i = (int)(n & mask);
+			String name = ids[i] >= 0 ? Symbols.name(ids[i]) : "?";
+			
+			out.append(String.format("%10d %6d  %s", n, depths[i], name)).append(System.lineSeparator());
+		}
+	}
+}
\ No newline at end of file
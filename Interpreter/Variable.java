@@ -0,0 +1,69 @@
+// Represents a variable
+class Variable extends TokenBase {
+	private String body;
+	private int calls;								// Calls made before the body was compiled
+	private boolean uncompilable;					// Whether CompiledWord rejected the body
+	private volatile CompiledWord compiled;
+	private volatile Memo memo;						// The word's result cache (null unless memo was run on the word)
+	
+	public Variable(String body, String token, int needs) {
+		super(token, needs);
+		this.body = body;
+	}
+	
+	public String getBody() {
+		return body;
+	}
+	
+	Memo getMemo() {
+		return memo;
+	}
+	
+	// Returns the approximate number of bytes held by the definition (see Interpreter.memoryUsage)
+	long footprint() {
+		Memo cache = memo;
+		return 64 + 40 + getToken().length() + body.length() + (cache != null ? cache.footprint() : 0);
+	}
+	
+	void setMemo(Memo memo) {
+		this.memo = memo;
+	}
+	
+	void run(Interpreter gloom, Stack<String> main, Stack<String> retain) {
+		super.run(gloom, main, retain);
+		
+		Memo cache = memo;
+		if (cache != null && cache.run(gloom, main)) return;
+		
+		invoke(gloom, main);
+	}
+	
+	// Runs the body (skipping the memo)
+	void invoke(Interpreter gloom, Stack<String> main) {
+		int frame = gloom.enterFrame();					// Every call gets its own frame for let bindings (quotations run by the body share it)
+		
+		try {
+			CompiledWord code = compiled;
+			
+			if (code == null || !code.isValid(gloom)) {		// Not compiled yet, or a definition has changed since
+				code = null;
+				
+				if (!uncompilable && gloom.getCompileThreshold() >= 0 && ++calls > gloom.getCompileThreshold()) {
+					code = compiled = CompiledWord.compile(gloom, body);
+					uncompilable = code == null;
+				}
+			}
+			
+			if (code != null)
+				code.run(gloom, main);
+			else
+				gloom.eval(body);			// If the variable is a function, then the function is run
+		} finally {
+			gloom.exitFrame(frame);
+		}
+	}
+	
+	boolean isPure(Interpreter gloom, java.util.Set<Object> visited) {
+		return !visited.add(this) || gloom.isPure(body, visited);
+	}
+}